@@ -0,0 +1,945 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NetCDFBulkConversion.java
+ * Copyright (C) 2015 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ <!-- globalinfo-start -->
+ * Converts all the files in a directory that match the glob patterns within a single JVM, using a pool of worker threads. Each worker re-uses its loader and saver instances.<br/>
+ * Files with an up-to-date output file (i.e., not older than the input file) get skipped, unless forced.<br/>
+ * The loader/saver is determined from the file extension; the NetCDF loader and saver can be configured separately, e.g., to sample the input or to store a numeric matrix.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -input-dir &lt;dir&gt;
+ *  The directory with the files to convert.</pre>
+ *
+ * <pre> -output-dir &lt;dir&gt;
+ *  The directory to store the converted files in.</pre>
+ *
+ * <pre> -include &lt;glob&gt;
+ *  The glob pattern for the files to convert, can be supplied multiple times.
+ *  (default: *.arff)</pre>
+ *
+ * <pre> -output-ext &lt;ext&gt;
+ *  The extension of the output files, determines the saver.
+ *  (default: .nc)</pre>
+ *
+ * <pre> -num-threads &lt;num&gt;
+ *  The number of worker threads, -1 for the number of processors.
+ *  (default: -1)</pre>
+ *
+ * <pre> -recursive
+ *  Whether to look for files in sub-directories as well.
+ *  (default: no)</pre>
+ *
+ * <pre> -force
+ *  Whether to convert files even if the output is up to date.
+ *  (default: no)</pre>
+ *
+ * <pre> -loader-options &lt;options&gt;
+ *  The options for the NetCDF loader.
+ *  (default: none)</pre>
+ *
+ * <pre> -saver-options &lt;options&gt;
+ *  The options for the NetCDF saver.
+ *  (default: none)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision: 11573 $
+ */
+public class NetCDFBulkConversion
+  implements Serializable, OptionHandler, RevisionHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2946105773912473524L;
+
+  /** the input directory. */
+  protected File m_InputDir = new File(".");
+
+  /** the output directory. */
+  protected File m_OutputDir = new File(".");
+
+  /** the glob patterns of the files to convert. */
+  protected String[] m_Include = new String[]{"*.arff"};
+
+  /** the extension of the output files. */
+  protected String m_OutputExtension = NetCDFLoader.FILE_EXTENSION_NC;
+
+  /** the number of threads. */
+  protected int m_NumThreads = -1;
+
+  /** whether to search recursively. */
+  protected boolean m_Recursive = false;
+
+  /** whether to convert up-to-date files as well. */
+  protected boolean m_Force = false;
+
+  /** the options for the NetCDF loader. */
+  protected String m_LoaderOptions = "";
+
+  /** the options for the NetCDF saver. */
+  protected String m_SaverOptions = "";
+
+  /** the loaders of the current worker, per extension. */
+  protected transient ThreadLocal<Map<String,AbstractFileLoader>> m_Loaders;
+
+  /** the savers of the current worker, per extension. */
+  protected transient ThreadLocal<Map<String,AbstractFileSaver>> m_Savers;
+
+  /**
+   * Returns a string describing this tool.
+   *
+   * @return a description of the tool
+   */
+  public String globalInfo() {
+    return
+      "Converts all the files in a directory that match the glob patterns "
+        + "within a single JVM, using a pool of worker threads. Each worker "
+        + "re-uses its loader and saver instances.\n"
+        + "Files with an up-to-date output file (i.e., not older than the "
+        + "input file) get skipped, unless forced.\n"
+        + "The loader/saver is determined from the file extension; the NetCDF "
+        + "loader and saver can be configured separately, e.g., to sample the "
+        + "input or to store a numeric matrix.";
+  }
+
+  /**
+   * Gets an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector result;
+
+    result = new Vector();
+
+    result.addElement(new Option(
+        "\tThe directory with the files to convert.",
+        "input-dir", 1, "-input-dir <dir>"));
+
+    result.addElement(new Option(
+        "\tThe directory to store the converted files in.",
+        "output-dir", 1, "-output-dir <dir>"));
+
+    result.addElement(new Option(
+        "\tThe glob pattern for the files to convert, can be supplied multiple times.\n"
+        + "\t(default: *.arff)",
+        "include", 1, "-include <glob>"));
+
+    result.addElement(new Option(
+        "\tThe extension of the output files, determines the saver.\n"
+        + "\t(default: " + NetCDFLoader.FILE_EXTENSION_NC + ")",
+        "output-ext", 1, "-output-ext <ext>"));
+
+    result.addElement(new Option(
+        "\tThe number of worker threads, -1 for the number of processors.\n"
+        + "\t(default: -1)",
+        "num-threads", 1, "-num-threads <num>"));
+
+    result.addElement(new Option(
+        "\tWhether to look for files in sub-directories as well.\n"
+        + "\t(default: no)",
+        "recursive", 0, "-recursive"));
+
+    result.addElement(new Option(
+        "\tWhether to convert files even if the output is up to date.\n"
+        + "\t(default: no)",
+        "force", 0, "-force"));
+
+    result.addElement(new Option(
+        "\tThe options for the NetCDF loader.\n"
+        + "\t(default: none)",
+        "loader-options", 1, "-loader-options <options>"));
+
+    result.addElement(new Option(
+        "\tThe options for the NetCDF saver.\n"
+        + "\t(default: none)",
+        "saver-options", 1, "-saver-options <options>"));
+
+    return result.elements();
+  }
+
+  /**
+   * returns the options of the current setup.
+   *
+   * @return		the current options
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+    int			i;
+
+    result = new Vector<String>();
+
+    result.add("-input-dir");
+    result.add(getInputDir().getPath());
+
+    result.add("-output-dir");
+    result.add(getOutputDir().getPath());
+
+    for (i = 0; i < m_Include.length; i++) {
+      result.add("-include");
+      result.add(m_Include[i]);
+    }
+
+    result.add("-output-ext");
+    result.add(getOutputExtension());
+
+    result.add("-num-threads");
+    result.add("" + getNumThreads());
+
+    if (getRecursive())
+      result.add("-recursive");
+
+    if (getForce())
+      result.add("-force");
+
+    if (getLoaderOptions().length() > 0) {
+      result.add("-loader-options");
+      result.add(getLoaderOptions());
+    }
+
+    if (getSaverOptions().length() > 0) {
+      result.add("-saver-options");
+      result.add(getSaverOptions());
+    }
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Parses the options for this object.
+   *
+   * @param options	the options to use
+   * @throws Exception	if setting of options fails
+   */
+  public void setOptions(String[] options) throws Exception {
+    String		tmpStr;
+    List<String>	include;
+
+    tmpStr = Utils.getOption("input-dir", options);
+    if (tmpStr.length() != 0)
+      setInputDir(new File(tmpStr));
+    else
+      setInputDir(new File("."));
+
+    tmpStr = Utils.getOption("output-dir", options);
+    if (tmpStr.length() != 0)
+      setOutputDir(new File(tmpStr));
+    else
+      setOutputDir(new File("."));
+
+    include = new ArrayList<String>();
+    do {
+      tmpStr = Utils.getOption("include", options);
+      if (tmpStr.length() != 0)
+	include.add(tmpStr);
+    }
+    while (tmpStr.length() != 0);
+    if (include.size() == 0)
+      include.add("*.arff");
+    setInclude(include.toArray(new String[include.size()]));
+
+    tmpStr = Utils.getOption("output-ext", options);
+    if (tmpStr.length() != 0)
+      setOutputExtension(tmpStr);
+    else
+      setOutputExtension(NetCDFLoader.FILE_EXTENSION_NC);
+
+    tmpStr = Utils.getOption("num-threads", options);
+    if (tmpStr.length() != 0)
+      setNumThreads(Integer.parseInt(tmpStr));
+    else
+      setNumThreads(-1);
+
+    setRecursive(Utils.getFlag("recursive", options));
+
+    setForce(Utils.getFlag("force", options));
+
+    setLoaderOptions(Utils.getOption("loader-options", options));
+
+    setSaverOptions(Utils.getOption("saver-options", options));
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String inputDirTipText() {
+    return "The directory with the files to convert.";
+  }
+
+  /**
+   * Get the input directory.
+   *
+   * @return the directory.
+   */
+  public File getInputDir() {
+    return m_InputDir;
+  }
+
+  /**
+   * Set the input directory.
+   *
+   * @param value the directory.
+   */
+  public void setInputDir(File value) {
+    m_InputDir = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String outputDirTipText() {
+    return "The directory to store the converted files in.";
+  }
+
+  /**
+   * Get the output directory.
+   *
+   * @return the directory.
+   */
+  public File getOutputDir() {
+    return m_OutputDir;
+  }
+
+  /**
+   * Set the output directory.
+   *
+   * @param value the directory.
+   */
+  public void setOutputDir(File value) {
+    m_OutputDir = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String includeTipText() {
+    return "The glob patterns for the files to convert.";
+  }
+
+  /**
+   * Get the glob patterns of the files to convert.
+   *
+   * @return the patterns.
+   */
+  public String[] getInclude() {
+    return m_Include;
+  }
+
+  /**
+   * Set the glob patterns of the files to convert.
+   *
+   * @param value the patterns.
+   */
+  public void setInclude(String[] value) {
+    m_Include = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String outputExtensionTipText() {
+    return "The extension of the output files, determines the saver.";
+  }
+
+  /**
+   * Get the extension of the output files.
+   *
+   * @return the extension.
+   */
+  public String getOutputExtension() {
+    return m_OutputExtension;
+  }
+
+  /**
+   * Set the extension of the output files.
+   *
+   * @param value the extension.
+   */
+  public void setOutputExtension(String value) {
+    if (!value.startsWith("."))
+      value = "." + value;
+    m_OutputExtension = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of worker threads, -1 for the number of processors.";
+  }
+
+  /**
+   * Get the number of worker threads.
+   *
+   * @return the number of threads.
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Set the number of worker threads.
+   *
+   * @param value the number of threads, -1 for the number of processors.
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String recursiveTipText() {
+    return "If enabled, sub-directories get searched as well.";
+  }
+
+  /**
+   * Get whether to search sub-directories as well.
+   *
+   * @return true if recursive.
+   */
+  public boolean getRecursive() {
+    return m_Recursive;
+  }
+
+  /**
+   * Set whether to search sub-directories as well.
+   *
+   * @param value true if recursive.
+   */
+  public void setRecursive(boolean value) {
+    m_Recursive = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String forceTipText() {
+    return "If enabled, files get converted even if the output is up to date.";
+  }
+
+  /**
+   * Get whether to convert files even if the output is up to date.
+   *
+   * @return true if forced.
+   */
+  public boolean getForce() {
+    return m_Force;
+  }
+
+  /**
+   * Set whether to convert files even if the output is up to date.
+   *
+   * @param value true if forced.
+   */
+  public void setForce(boolean value) {
+    m_Force = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String loaderOptionsTipText() {
+    return "The options for the NetCDF loader, e.g., for sampling the input.";
+  }
+
+  /**
+   * Get the options for the NetCDF loader.
+   *
+   * @return the options.
+   */
+  public String getLoaderOptions() {
+    return m_LoaderOptions;
+  }
+
+  /**
+   * Set the options for the NetCDF loader.
+   *
+   * @param value the options.
+   */
+  public void setLoaderOptions(String value) {
+    m_LoaderOptions = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String saverOptionsTipText() {
+    return "The options for the NetCDF saver.";
+  }
+
+  /**
+   * Get the options for the NetCDF saver.
+   *
+   * @return the options.
+   */
+  public String getSaverOptions() {
+    return m_SaverOptions;
+  }
+
+  /**
+   * Set the options for the NetCDF saver.
+   *
+   * @param value the options.
+   */
+  public void setSaverOptions(String value) {
+    m_SaverOptions = value;
+  }
+
+  /**
+   * Turns the glob pattern into a regular expression.
+   *
+   * @param glob the glob pattern
+   * @return the regular expression
+   */
+  protected Pattern globToPattern(String glob) {
+    StringBuilder result;
+    int i;
+    char c;
+
+    result = new StringBuilder();
+    for (i = 0; i < glob.length(); i++) {
+      c = glob.charAt(i);
+      if (c == '*')
+	result.append(".*");
+      else if (c == '?')
+	result.append(".");
+      else
+	result.append(Pattern.quote("" + c));
+    }
+
+    return Pattern.compile(result.toString());
+  }
+
+  /**
+   * Collects the files that match the patterns.
+   *
+   * @param dir the directory to search
+   * @param patterns the patterns to match the file names against
+   * @param files for storing the matching files
+   */
+  protected void collectFiles(File dir, Pattern[] patterns, List<File> files) {
+    File[] list;
+    int i;
+    int n;
+
+    list = dir.listFiles();
+    if (list == null)
+      return;
+
+    for (i = 0; i < list.length; i++) {
+      if (list[i].isDirectory()) {
+	if (m_Recursive)
+	  collectFiles(list[i], patterns, files);
+	continue;
+      }
+      for (n = 0; n < patterns.length; n++) {
+	if (patterns[n].matcher(list[i].getName()).matches()) {
+	  files.add(list[i]);
+	  break;
+	}
+      }
+    }
+  }
+
+  /**
+   * Determines the output file for the input file, retaining the
+   * sub-directory structure.
+   *
+   * @param input the input file
+   * @return the output file
+   */
+  protected File getOutputFile(File input) {
+    String relative;
+    String name;
+
+    relative = input.getParentFile().getAbsolutePath().substring(m_InputDir.getAbsolutePath().length());
+    name = input.getName();
+    if (name.lastIndexOf('.') > 0)
+      name = name.substring(0, name.lastIndexOf('.'));
+
+    return new File(new File(m_OutputDir, relative), name + m_OutputExtension);
+  }
+
+  /**
+   * Returns the extension of the file.
+   *
+   * @param file the file to get the extension for
+   * @return the extension (incl dot), empty string if none
+   */
+  protected String getExtension(File file) {
+    String name;
+
+    name = file.getName();
+    if (name.lastIndexOf('.') == -1)
+      return "";
+
+    return name.substring(name.lastIndexOf('.')).toLowerCase();
+  }
+
+  /**
+   * Checks whether the extension belongs to NetCDF files.
+   *
+   * @param ext the extension to check
+   * @return true if a NetCDF extension
+   */
+  protected boolean isNetCDF(String ext) {
+    return ext.equals(NetCDFLoader.FILE_EXTENSION_NC) || ext.equals(NetCDFLoader.FILE_EXTENSION_CDF);
+  }
+
+  /**
+   * Returns the loader of the current worker for the extension, creating it
+   * if necessary.
+   *
+   * @param ext the extension
+   * @return the loader
+   * @throws Exception if no loader available or configuring fails
+   */
+  protected AbstractFileLoader getLoader(String ext) throws Exception {
+    Map<String,AbstractFileLoader> loaders;
+    AbstractFileLoader result;
+
+    loaders = m_Loaders.get();
+    result = loaders.get(ext);
+    if (result == null) {
+      if (isNetCDF(ext)) {
+	result = new NetCDFLoader();
+	((NetCDFLoader) result).setOptions(Utils.splitOptions(m_LoaderOptions));
+      }
+      else {
+	result = ConverterUtils.getLoaderForExtension(ext);
+      }
+      if (result == null)
+	throw new IllegalArgumentException("No loader available for extension: " + ext);
+      loaders.put(ext, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the saver of the current worker for the extension, creating it
+   * if necessary.
+   *
+   * @param ext the extension
+   * @return the saver
+   * @throws Exception if no saver available or configuring fails
+   */
+  protected AbstractFileSaver getSaver(String ext) throws Exception {
+    Map<String,AbstractFileSaver> savers;
+    AbstractFileSaver result;
+
+    savers = m_Savers.get();
+    result = savers.get(ext);
+    if (result == null) {
+      if (isNetCDF(ext)) {
+	result = new NetCDFSaver();
+	((NetCDFSaver) result).setOptions(Utils.splitOptions(m_SaverOptions));
+      }
+      else {
+	result = ConverterUtils.getSaverForExtension(ext);
+      }
+      if (result == null)
+	throw new IllegalArgumentException("No saver available for extension: " + ext);
+      savers.put(ext, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the temporary file that the output gets written to first. It
+   * resides in the same directory as the output, keeps its extension and is
+   * unique per worker thread.
+   *
+   * @param output the output file
+   * @return the temporary file
+   */
+  protected File getTempFile(File output) {
+    return new File(output.getParentFile(), ".tmp-" + Thread.currentThread().getId() + "-" + output.getName());
+  }
+
+  /**
+   * Converts a single file, using the loader/saver of the current worker.
+   * The data is written to a temporary file first, which replaces the output
+   * file only after successful conversion. This way, an aborted conversion
+   * never leaves a partial output file that looks up to date.
+   *
+   * @param input the input file
+   * @param output the output file
+   * @return the number of instances converted
+   * @throws Exception if conversion fails
+   */
+  protected int convert(File input, File output) throws Exception {
+    AbstractFileLoader loader;
+    AbstractFileSaver saver;
+    Instances data;
+    File tmp;
+
+    tmp = null;
+    try {
+      loader = getLoader(getExtension(input));
+      loader.setFile(input);
+      data = loader.getDataSet();
+
+      if (!output.getParentFile().exists() && !output.getParentFile().mkdirs() && !output.getParentFile().exists())
+	throw new IllegalStateException("Failed to create output directory: " + output.getParentFile());
+      tmp = getTempFile(output);
+      saver = getSaver(m_OutputExtension.toLowerCase());
+      saver.setInstances(data);
+      saver.setFile(tmp);
+      saver.writeBatch();
+
+      if (output.exists() && !output.delete())
+	throw new IllegalStateException("Failed to remove outdated output file: " + output);
+      if (!tmp.renameTo(output))
+	throw new IllegalStateException("Failed to rename '" + tmp + "' to '" + output + "'!");
+      tmp = null;
+    }
+    catch (Exception e) {
+      // loader/saver might be in an inconsistent state
+      m_Loaders.get().clear();
+      m_Savers.get().clear();
+      throw e;
+    }
+    finally {
+      if ((tmp != null) && tmp.exists())
+	tmp.delete();
+    }
+
+    return data.numInstances();
+  }
+
+  /**
+   * Ensures that no two input files map to the same output file (e.g.,
+   * "a.arff" and "a.csv"), as their conversions would overwrite each other.
+   *
+   * @param files the input files
+   * @throws IllegalStateException if there are collisions, listing all of them
+   */
+  protected void checkCollisions(List<File> files) {
+    Map<File,File> outputs;
+    StringBuilder collisions;
+    File output;
+
+    outputs = new HashMap<File,File>();
+    collisions = new StringBuilder();
+    for (File input: files) {
+      output = getOutputFile(input).getAbsoluteFile();
+      if (outputs.containsKey(output))
+	collisions.append("\n" + outputs.get(output) + ", " + input + " -> " + output);
+      else
+	outputs.put(output, input);
+    }
+
+    if (collisions.length() > 0)
+      throw new IllegalStateException("Multiple input files map to the same output file:" + collisions);
+  }
+
+  /**
+   * Performs the conversion of all matching files.
+   *
+   * @return the summary
+   * @throws Exception if the setup is invalid, input files map to the same
+   * 			output file or the conversion is interrupted
+   */
+  public String execute() throws Exception {
+    StringBuilder result;
+    List<File> files;
+    Pattern[] patterns;
+    ExecutorService pool;
+    final AtomicInteger converted;
+    final AtomicInteger skipped;
+    final AtomicInteger failed;
+    final AtomicLong instances;
+    final AtomicLong bytes;
+    int threads;
+    long start;
+    double secs;
+    int i;
+
+    if (!m_InputDir.isDirectory())
+      throw new IllegalArgumentException("Input directory does not exist: " + m_InputDir);
+
+    patterns = new Pattern[m_Include.length];
+    for (i = 0; i < m_Include.length; i++)
+      patterns[i] = globToPattern(m_Include[i]);
+    files = new ArrayList<File>();
+    collectFiles(m_InputDir, patterns, files);
+    checkCollisions(files);
+
+    m_Loaders = new ThreadLocal<Map<String,AbstractFileLoader>>() {
+      @Override
+      protected Map<String,AbstractFileLoader> initialValue() {
+	return new HashMap<String,AbstractFileLoader>();
+      }
+    };
+    m_Savers = new ThreadLocal<Map<String,AbstractFileSaver>>() {
+      @Override
+      protected Map<String,AbstractFileSaver> initialValue() {
+	return new HashMap<String,AbstractFileSaver>();
+      }
+    };
+
+    converted = new AtomicInteger();
+    skipped = new AtomicInteger();
+    failed = new AtomicInteger();
+    instances = new AtomicLong();
+    bytes = new AtomicLong();
+    threads = m_NumThreads;
+    if (threads < 1)
+      threads = Runtime.getRuntime().availableProcessors();
+    start = System.currentTimeMillis();
+    pool = Executors.newFixedThreadPool(threads);
+    for (final File input: files) {
+      final File output = getOutputFile(input);
+      if (!m_Force && output.exists() && (output.lastModified() >= input.lastModified())) {
+	skipped.incrementAndGet();
+	continue;
+      }
+      pool.submit(new Runnable() {
+	public void run() {
+	  try {
+	    instances.addAndGet(convert(input, output));
+	    bytes.addAndGet(input.length());
+	    converted.incrementAndGet();
+	  }
+	  catch (Exception e) {
+	    failed.incrementAndGet();
+	    System.err.println("Failed to convert '" + input + "':");
+	    e.printStackTrace();
+	  }
+	}
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    secs = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+
+    result = new StringBuilder();
+    result.append("Files found: " + files.size() + "\n");
+    result.append("Files converted: " + converted.get() + "\n");
+    result.append("Files skipped (up to date): " + skipped.get() + "\n");
+    result.append("Files failed: " + failed.get() + "\n");
+    result.append("Instances: " + instances.get() + "\n");
+    result.append("Threads: " + threads + "\n");
+    result.append("Time (sec): " + Utils.doubleToString(secs, 3) + "\n");
+    result.append("Files/sec: " + Utils.doubleToString(converted.get() / secs, 2) + "\n");
+    result.append("Instances/sec: " + Utils.doubleToString(instances.get() / secs, 2) + "\n");
+    result.append("MB/sec (input): " + Utils.doubleToString(bytes.get() / 1024.0 / 1024.0 / secs, 2) + "\n");
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 11573 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args the options, see {@link #listOptions()}
+   */
+  public static void main(String[] args) {
+    NetCDFBulkConversion conversion;
+    Enumeration enm;
+    Option option;
+
+    conversion = new NetCDFBulkConversion();
+    try {
+      if (Utils.getFlag('h', args) || Utils.getFlag("help", args)) {
+	System.out.println("\nHelp requested.\n\nOptions:\n");
+	enm = conversion.listOptions();
+	while (enm.hasMoreElements()) {
+	  option = (Option) enm.nextElement();
+	  System.out.println(option.synopsis() + "\n" + option.description());
+	}
+	return;
+      }
+      conversion.setOptions(args);
+      System.out.println(conversion.execute());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
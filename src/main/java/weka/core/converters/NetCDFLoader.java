@@ -14,57 +14,81 @@
  */
 
 /*
- * ExcelLoader.java
+ * NetCDFLoader.java
  * Copyright (C) 2010-2015 University of Waikato, Hamilton, New Zealand
  *
  */
 
 package weka.core.converters;
 
+import ucar.ma2.Array;
+import ucar.ma2.ArrayChar;
+import ucar.ma2.DataType;
+import ucar.ma2.Section;
+import ucar.nc2.Dimension;
 import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SelectedTag;
+import weka.core.SingleIndex;
+import weka.core.Tag;
+import weka.core.Utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
 
 /**
- * <!-- globalinfo-start --> Reads a source that is in the Excel spreadsheet
- * format.<br/>
- * For instance, a spreadsheet generated with the Microsoft Office Suite.
+ <!-- globalinfo-start -->
+ * Reads data from NetCDF sources.<br/>
+ * Optionally, only a sample of the rows is read: uniform random, stratified on a nominal attribute or systematic (every k-th row). The row indices get determined first and only the selected rows are read afterwards.<br/>
+ * Numeric attributes stored in a single 2-D variable (see NetCDFSaver) are detected automatically.<br/>
+ * When reading incrementally, the (selected) rows are read in blocks.
  * <p/>
- * <!-- globalinfo-end -->
+ <!-- globalinfo-end -->
  * 
- * <!-- options-start --> Valid options are:
- * <p/>
+ <!-- options-start -->
+ * Valid options are: <p/>
  * 
- * <pre>
- * -sheet &lt;index&gt;
- *  The index of the sheet to load; 'first' and 'last' are accepted as well.
- * </pre>
+ * <pre> -sampling &lt;none|random|stratified|systematic&gt;
+ *  The type of sampling to apply when reading the rows.
+ *  (default: none)</pre>
  * 
- * <pre>
- * -M &lt;str&gt;
- *  The string representing a missing value.
- *  (default: '')
- * </pre>
+ * <pre> -Z &lt;num&gt;
+ *  The size of the sample as a percentage of the rows.
+ *  (default: 100)</pre>
  * 
- * <!-- options-end -->
+ * <pre> -S &lt;num&gt;
+ *  The seed for the random number generator.
+ *  (default: 1)</pre>
  * 
- * For a tutorial on ExcelDOM, see: <br/>
- * <a href="http://java.dzone.com/news/integrate-openoffice-java"
- * target="_blank">http://java.dzone.com/news/integrate-openoffice-java</a>
+ * <pre> -stratify-att &lt;index&gt;
+ *  The index of the nominal attribute to stratify on; 'first' and 'last' are accepted as well.
+ *  (default: last)</pre>
  * 
+ <!-- options-end -->
+ *
  * @author FracPete (fracpete at waikato dot ac dot nz)
- * @author Geertjan Wielenga
  * @version $Revision: 11573 $
  * @see weka.core.converters.Loader
  */
 public class NetCDFLoader
   extends AbstractFileLoader
-  implements BatchConverter, URLSourcedLoader {
+  implements BatchConverter, IncrementalConverter, URLSourcedLoader, OptionHandler {
 
   /** for serialization. */
   private static final long serialVersionUID = 9164120515718983413L;
@@ -78,9 +102,81 @@ public class NetCDFLoader
   /** the file description. */
   public static String FILE_DESCRIPTION = "NetCDF files";
 
+  /** the maximum number of rows to read with a single section read. */
+  public final static int CHUNK_SIZE = 65536;
+
+  /** the number of rows to read at a time when reading incrementally. */
+  public final static int BLOCK_SIZE = 4096;
+
+  /** the maximum number of bytes between selected rows of a variable that
+   * still get read in one go, rather than with a separate read. */
+  public final static int MAX_GAP_BYTES = 65536;
+
+  /** no sampling. */
+  public final static int SAMPLING_NONE = 0;
+
+  /** uniform random sampling. */
+  public final static int SAMPLING_RANDOM = 1;
+
+  /** stratified random sampling. */
+  public final static int SAMPLING_STRATIFIED = 2;
+
+  /** systematic sampling, i.e., every k-th row. */
+  public final static int SAMPLING_SYSTEMATIC = 3;
+
+  /** the sampling types. */
+  public final static Tag[] TAGS_SAMPLING = {
+    new Tag(SAMPLING_NONE, "none", "No sampling"),
+    new Tag(SAMPLING_RANDOM, "random", "Uniform random"),
+    new Tag(SAMPLING_STRATIFIED, "stratified", "Stratified random"),
+    new Tag(SAMPLING_SYSTEMATIC, "systematic", "Systematic"),
+  };
+
   /** the url. */
   protected String m_URL = "http://";
 
+  /** the content of the stream to read from, null if reading from file/URL. */
+  protected transient byte[] m_Data;
+
+  /** whether the source gets set via a file. */
+  protected boolean m_SettingFile;
+
+  /** the type of sampling. */
+  protected int m_Sampling = SAMPLING_NONE;
+
+  /** the sample size in percent. */
+  protected double m_SampleSize = 100.0;
+
+  /** the seed for the random number generator. */
+  protected int m_Seed = 1;
+
+  /** the attribute to stratify on. */
+  protected SingleIndex m_StratifyAttribute = new SingleIndex("last");
+
+  /** the names of the variables, one per attribute. */
+  protected String[] m_Variables;
+
+  /** the columns in the numeric matrix, one per attribute (-1 if own variable). */
+  protected int[] m_Columns;
+
+  /** the number of rows in the file. */
+  protected int m_NumRows;
+
+  /** the file that gets read incrementally. */
+  protected transient NetcdfFile m_IncrementalFile;
+
+  /** the (selected) rows to read incrementally. */
+  protected int[] m_IncrementalRows;
+
+  /** the index of the first row of the next block to read. */
+  protected int m_IncrementalOffset;
+
+  /** the current block of rows. */
+  protected Instances m_IncrementalBlock;
+
+  /** the position of the next instance in the current block. */
+  protected int m_IncrementalPos;
+
   /**
    * Returns a string describing this Loader.
    *
@@ -88,7 +184,223 @@ public class NetCDFLoader
    *         explorer/experimenter gui
    */
   public String globalInfo() {
-    return "Reads data from NetCDF sources.";
+    return
+      "Reads data from NetCDF sources.\n"
+        + "Optionally, only a sample of the rows is read: uniform random, "
+        + "stratified on a nominal attribute or systematic (every k-th row). "
+        + "The row indices get determined first and only the selected rows "
+        + "are read afterwards.\n"
+        + "Numeric attributes stored in a single 2-D variable (see NetCDFSaver) "
+        + "are detected automatically.\n"
+        + "When reading incrementally, the (selected) rows are read in blocks.";
+  }
+
+  /**
+   * Gets an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector result;
+
+    result = new Vector();
+
+    result.addElement(new Option(
+        "\tThe type of sampling to apply when reading the rows.\n"
+        + "\t(default: none)",
+        "sampling", 1, "-sampling <none|random|stratified|systematic>"));
+
+    result.addElement(new Option(
+        "\tThe size of the sample as a percentage of the rows.\n"
+        + "\t(default: 100)",
+        "Z", 1, "-Z <num>"));
+
+    result.addElement(new Option(
+        "\tThe seed for the random number generator.\n"
+        + "\t(default: 1)",
+        "S", 1, "-S <num>"));
+
+    result.addElement(new Option(
+        "\tThe index of the nominal attribute to stratify on; 'first' and 'last' are accepted as well.\n"
+        + "\t(default: last)",
+        "stratify-att", 1, "-stratify-att <index>"));
+
+    return result.elements();
+  }
+
+  /**
+   * returns the options of the current setup.
+   *
+   * @return		the current options
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+
+    result = new Vector<String>();
+
+    result.add("-sampling");
+    result.add("" + getSampling().getSelectedTag().getIDStr());
+
+    result.add("-Z");
+    result.add("" + getSampleSize());
+
+    result.add("-S");
+    result.add("" + getSeed());
+
+    result.add("-stratify-att");
+    result.add(getStratifyAttribute());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Parses the options for this object.
+   *
+   * @param options	the options to use
+   * @throws Exception	if setting of options fails
+   */
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("sampling", options);
+    if (tmpStr.length() != 0)
+      setSampling(new SelectedTag(tmpStr, TAGS_SAMPLING));
+    else
+      setSampling(new SelectedTag(SAMPLING_NONE, TAGS_SAMPLING));
+
+    tmpStr = Utils.getOption('Z', options);
+    if (tmpStr.length() != 0)
+      setSampleSize(Double.parseDouble(tmpStr));
+    else
+      setSampleSize(100.0);
+
+    tmpStr = Utils.getOption('S', options);
+    if (tmpStr.length() != 0)
+      setSeed(Integer.parseInt(tmpStr));
+    else
+      setSeed(1);
+
+    tmpStr = Utils.getOption("stratify-att", options);
+    if (tmpStr.length() != 0)
+      setStratifyAttribute(tmpStr);
+    else
+      setStratifyAttribute("last");
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String samplingTipText() {
+    return "The type of sampling to apply when reading the rows.";
+  }
+
+  /**
+   * Get the type of sampling.
+   *
+   * @return the sampling type.
+   */
+  public SelectedTag getSampling() {
+    return new SelectedTag(m_Sampling, TAGS_SAMPLING);
+  }
+
+  /**
+   * Set the type of sampling.
+   *
+   * @param value the sampling type.
+   */
+  public void setSampling(SelectedTag value) {
+    if (value.getTags() == TAGS_SAMPLING)
+      m_Sampling = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String sampleSizeTipText() {
+    return "The size of the sample as a percentage of the rows.";
+  }
+
+  /**
+   * Get the size of the sample in percent.
+   *
+   * @return the sample size.
+   */
+  public double getSampleSize() {
+    return m_SampleSize;
+  }
+
+  /**
+   * Set the size of the sample in percent.
+   *
+   * @param value the sample size (0-100).
+   * @throws IllegalArgumentException if the value is out of range
+   */
+  public void setSampleSize(double value) {
+    if ((value < 0) || (value > 100))
+      throw new IllegalArgumentException("Sample size must be between 0 and 100, provided: " + value);
+    m_SampleSize = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The seed for the random number generator.";
+  }
+
+  /**
+   * Get the seed for the random number generator.
+   *
+   * @return the seed.
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Set the seed for the random number generator.
+   *
+   * @param value the seed.
+   */
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String stratifyAttributeTipText() {
+    return "The index of the nominal attribute to stratify on; 'first' and 'last' are accepted as well.";
+  }
+
+  /**
+   * Get the index of the attribute to stratify on.
+   *
+   * @return the index.
+   */
+  public String getStratifyAttribute() {
+    return m_StratifyAttribute.getSingleIndex();
+  }
+
+  /**
+   * Set the index of the attribute to stratify on.
+   *
+   * @param value the index.
+   */
+  public void setStratifyAttribute(String value) {
+    m_StratifyAttribute.setSingleIndex(value);
   }
 
   /**
@@ -129,6 +441,7 @@ public class NetCDFLoader
   @Override
   public void reset() throws IOException {
     m_structure = null;
+    closeIncremental();
 
     setRetrieval(NONE);
 
@@ -149,7 +462,62 @@ public class NetCDFLoader
   public void setSource(URL url) throws IOException {
     m_structure = null;
     setRetrieval(NONE);
-    m_URL = url.toString();
+    closeIncremental();
+    m_URL  = url.toString();
+    m_File = null;
+    m_Data = null;
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be the
+   * supplied file.
+   *
+   * @param file the source file.
+   * @throws java.io.IOException if an error occurs
+   */
+  @Override
+  public void setSource(File file) throws IOException {
+    m_Data = null;
+    m_SettingFile = true;
+    try {
+      super.setSource(file);
+    }
+    finally {
+      m_SettingFile = false;
+    }
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be the
+   * supplied stream. When setting a file, the data is read directly from the
+   * file, hence the stream only gets closed. Otherwise, the content of the
+   * stream gets read into memory, as netCDF files require random access.
+   *
+   * @param input the input stream
+   * @throws java.io.IOException if an error occurs
+   */
+  @Override
+  public void setSource(InputStream input) throws IOException {
+    ByteArrayOutputStream bytes;
+    byte[] buffer;
+    int read;
+
+    m_structure = null;
+    setRetrieval(NONE);
+    closeIncremental();
+    try {
+      if (!m_SettingFile) {
+	bytes = new ByteArrayOutputStream();
+	buffer = new byte[CHUNK_SIZE];
+	while ((read = input.read(buffer)) != -1)
+	  bytes.write(buffer, 0, read);
+	m_Data = bytes.toByteArray();
+	m_File = null;
+      }
+    }
+    finally {
+      input.close();
+    }
   }
 
   /**
@@ -174,6 +542,594 @@ public class NetCDFLoader
     return m_URL;
   }
 
+  /**
+   * Opens the file, URL or the content of the stream.
+   *
+   * @return the opened file
+   * @throws IOException if the file does not exist or opening fails
+   */
+  protected NetcdfFile openFile() throws IOException {
+    if (m_Data != null) {
+      return NetcdfFile.openInMemory("stream", m_Data);
+    }
+    else if ((m_File != null) && !m_File.isEmpty()) {
+      if (!new File(m_File).exists())
+	throw new IOException("File '" + m_File + "' does not exist!");
+      return NetcdfFile.open(m_File);
+    }
+    else {
+      return NetcdfFile.open(m_URL);
+    }
+  }
+
+  /**
+   * Creates the attribute for the variable, using the meta-data stored by
+   * the saver. Without meta-data, the type is derived from the data type.
+   *
+   * @param var the variable to create the attribute for
+   * @return the attribute
+   * @throws Exception if the meta-data cannot be parsed
+   */
+  protected Attribute createAttribute(Variable var) throws Exception {
+    Attribute result;
+    ucar.nc2.Attribute meta;
+    String name;
+    String type;
+    String format;
+    String[] labels;
+    ArrayList<String> values;
+    int i;
+
+    name = var.getShortName().substring(NetCDFSaver.VARIABLE_PREFIX.length());
+    meta = var.findAttribute(NetCDFSaver.ATT_NAME);
+    if (meta != null)
+      name = meta.getStringValue();
+
+    meta = var.findAttribute(NetCDFSaver.ATT_TYPE);
+    if (meta != null)
+      type = meta.getStringValue();
+    else if (var.getDataType() == DataType.DOUBLE)
+      type = Attribute.typeToString(Attribute.NUMERIC);
+    else if (var.getDataType() == DataType.LONG)
+      type = Attribute.typeToString(Attribute.DATE);
+    else
+      type = Attribute.typeToString(Attribute.STRING);
+
+    if (type.equals(Attribute.typeToString(Attribute.NUMERIC))) {
+      result = new Attribute(name);
+    }
+    else if (type.equals(Attribute.typeToString(Attribute.DATE))) {
+      meta = var.findAttribute(NetCDFSaver.ATT_DATE_FORMAT);
+      format = (meta != null) ? meta.getStringValue() : NetCDFSaver.DATE_FORMAT;
+      result = new Attribute(name, format);
+    }
+    else if (type.equals(Attribute.typeToString(Attribute.NOMINAL))) {
+      meta = var.findAttribute(NetCDFSaver.ATT_LABELS);
+      labels = (meta != null) ? Utils.splitOptions(meta.getStringValue()) : new String[0];
+      values = new ArrayList<String>();
+      for (i = 0; i < labels.length; i++)
+	values.add(labels[i]);
+      result = new Attribute(name, values);
+    }
+    else if (type.equals(Attribute.typeToString(Attribute.STRING))) {
+      result = new Attribute(name, (List<String>) null);
+    }
+    else {
+      throw new IllegalStateException("Unhandled attribute type: " + type);
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads the header from the file.
+   *
+   * @param file the file to read from
+   * @return the header
+   * @throws Exception if reading of the header fails
+   */
+  protected Instances readHeader(NetcdfFile file) throws Exception {
+    ArrayList<Attribute> atts;
+    List<String> vars;
+    List<Integer> columns;
+    ucar.nc2.Attribute meta;
+    Dimension dim;
+    String relation;
+    int i;
+
+    atts = new ArrayList<Attribute>();
+    vars = new ArrayList<String>();
+    columns = new ArrayList<Integer>();
+    for (Variable var: file.getVariables()) {
+      if (!var.getShortName().startsWith(NetCDFSaver.VARIABLE_PREFIX))
+	continue;
+      atts.add(createAttribute(var));
+      vars.add(var.getShortName());
+      meta = var.findAttribute(NetCDFSaver.ATT_COLUMN);
+      columns.add((meta == null) ? -1 : meta.getNumericValue().intValue());
+    }
+    if (atts.size() == 0)
+      throw new IOException("No attribute variables found!");
+
+    meta = file.findGlobalAttribute(NetCDFSaver.ATT_RELATION);
+    if (meta != null)
+      relation = meta.getStringValue();
+    else
+      relation = new File(file.getLocation()).getName();
+
+    dim = file.findDimension("num_instances");
+    m_NumRows = (dim == null) ? 0 : dim.getLength();
+    m_Variables = vars.toArray(new String[vars.size()]);
+    m_Columns = new int[columns.size()];
+    for (i = 0; i < m_Columns.length; i++)
+      m_Columns[i] = columns.get(i);
+
+    return new Instances(relation, atts, 0);
+  }
+
+  /**
+   * Reads a block of rows from the variable.
+   *
+   * @param var the variable to read from
+   * @param start the first row
+   * @param count the number of rows
+   * @return the data
+   * @throws Exception if reading fails
+   */
+  protected Array readSection(Variable var, int start, int count) throws Exception {
+    int[] origin;
+    int[] shape;
+
+    origin = new int[var.getRank()];
+    shape = var.getShape();
+    origin[0] = start;
+    shape[0] = count;
+
+    return var.read(origin, shape);
+  }
+
+  /**
+   * Reads every stride-th row between first and last (incl) from the
+   * variable with a single strided section read.
+   *
+   * @param var the variable to read from
+   * @param first the first row
+   * @param last the last row
+   * @param stride the stride
+   * @return the data
+   * @throws Exception if reading fails
+   */
+  protected Array readSection(Variable var, int first, int last, int stride) throws Exception {
+    Section section;
+    int[] shape;
+    int i;
+
+    if (stride == 1)
+      return readSection(var, first, last - first + 1);
+
+    shape = var.getShape();
+    section = new Section();
+    section.appendRange(first, last, stride);
+    for (i = 1; i < shape.length; i++)
+      section.appendRange(0, shape[i] - 1);
+
+    return var.read(section);
+  }
+
+  /**
+   * Selects all the rows.
+   *
+   * @return the row indices
+   */
+  protected int[] selectAll() {
+    int[] result;
+    int i;
+
+    result = new int[m_NumRows];
+    for (i = 0; i < result.length; i++)
+      result[i] = i;
+
+    return result;
+  }
+
+  /**
+   * Selects rows uniformly at random, using selection sampling (Knuth's
+   * algorithm S). The indices are generated in ascending order.
+   *
+   * @param n the number of rows to select
+   * @return the row indices
+   */
+  protected int[] selectRandom(int n) {
+    int[] result;
+    Random rand;
+    int selected;
+    int i;
+
+    result = new int[n];
+    rand = new Random(m_Seed);
+    selected = 0;
+    for (i = 0; (i < m_NumRows) && (selected < n); i++) {
+      if ((m_NumRows - i) * rand.nextDouble() < n - selected)
+	result[selected++] = i;
+    }
+
+    return result;
+  }
+
+  /**
+   * Selects every k-th row, starting at a random offset. Since the stride is
+   * constant, the rows get read with strided section reads.
+   *
+   * @param n the number of rows to select
+   * @return the row indices
+   */
+  protected int[] selectSystematic(int n) {
+    int[] result;
+    int stride;
+    int offset;
+    int i;
+
+    result = new int[n];
+    if (n == 0)
+      return result;
+
+    stride = Math.max(1, m_NumRows / n);
+    offset = new Random(m_Seed).nextInt(stride);
+    for (i = 0; i < n; i++)
+      result[i] = offset + i * stride;
+
+    return result;
+  }
+
+  /**
+   * Determines the stratum of the label. Missing and unknown labels are
+   * collected in an additional stratum.
+   *
+   * @param att the nominal attribute
+   * @param label the label to look up
+   * @return the stratum
+   */
+  protected int stratumOf(Attribute att, String label) {
+    int result;
+
+    if (label.equals("?"))
+      return att.numValues();
+    result = att.indexOfValue(label);
+    if (result == -1)
+      result = att.numValues();
+
+    return result;
+  }
+
+  /**
+   * Returns the stratum sizes according to the label counts that the saver
+   * stored with the variable.
+   *
+   * @param var the variable of the attribute to stratify on
+   * @param att the nominal attribute
+   * @return the sizes (incl stratum for missing values), null if no
+   * 		statistics available or if they don't match the data
+   */
+  protected int[] getStratumSizes(Variable var, Attribute att) {
+    int[] result;
+    NetCDFStatistics stats;
+    long[] counts;
+    long total;
+    int i;
+
+    stats = NetCDFStatistics.fromVariable(var);
+    if ((stats == null) || (stats.getLabelCounts() == null))
+      return null;
+    counts = stats.getLabelCounts();
+    if (counts.length != att.numValues())
+      return null;
+
+    result = new int[counts.length + 1];
+    total = 0;
+    for (i = 0; i < counts.length; i++) {
+      result[i] = (int) counts[i];
+      total += counts[i];
+    }
+    result[counts.length] = (int) stats.getMissing();
+    total += stats.getMissing();
+    if (total != m_NumRows)
+      return null;
+
+    return result;
+  }
+
+  /**
+   * Selects rows randomly within each stratum of the nominal attribute to
+   * stratify on, applying selection sampling per stratum. Only the variable
+   * of that attribute gets read, in a single pass. The stratum sizes are
+   * taken from the statistics stored in the file. Without statistics, the
+   * strata get determined while reading the variable and the selection
+   * takes place afterwards.
+   *
+   * @param file the file to read from
+   * @return the row indices
+   * @throws Exception if the attribute is not nominal or reading fails
+   */
+  protected int[] selectStratified(NetcdfFile file) throws Exception {
+    int[] result;
+    Attribute att;
+    Variable var;
+    ArrayChar array;
+    Random rand;
+    int[] strata;
+    int[] sizes;
+    int[] targets;
+    int[] seen;
+    int[] selected;
+    int total;
+    int start;
+    int count;
+    int stratum;
+    int i;
+
+    m_StratifyAttribute.setUpper(m_structure.numAttributes() - 1);
+    att = m_structure.attribute(m_StratifyAttribute.getIndex());
+    if (!att.isNominal())
+      throw new IOException("Attribute to stratify on is not nominal: " + att.name());
+    var = file.getRootGroup().findVariable(m_Variables[m_StratifyAttribute.getIndex()]);
+
+    strata = null;
+    sizes = getStratumSizes(var, att);
+    if (sizes == null) {
+      sizes = new int[att.numValues() + 1];
+      strata = new int[m_NumRows];
+      for (start = 0; start < m_NumRows; start += CHUNK_SIZE) {
+	count = Math.min(CHUNK_SIZE, m_NumRows - start);
+	array = (ArrayChar) readSection(var, start, count);
+	for (i = 0; i < count; i++) {
+	  strata[start + i] = stratumOf(att, array.getString(i));
+	  sizes[strata[start + i]]++;
+	}
+      }
+    }
+
+    targets = new int[sizes.length];
+    total = 0;
+    for (i = 0; i < sizes.length; i++) {
+      targets[i] = (int) Math.round(sizes[i] * m_SampleSize / 100.0);
+      total += targets[i];
+    }
+
+    // select rows
+    result = new int[total];
+    rand = new Random(m_Seed);
+    seen = new int[sizes.length];
+    selected = new int[sizes.length];
+    total = 0;
+    for (start = 0; start < m_NumRows; start += CHUNK_SIZE) {
+      count = Math.min(CHUNK_SIZE, m_NumRows - start);
+      array = null;
+      if (strata == null)
+	array = (ArrayChar) readSection(var, start, count);
+      for (i = 0; i < count; i++) {
+	if (strata == null)
+	  stratum = stratumOf(att, array.getString(i));
+	else
+	  stratum = strata[start + i];
+	if ((sizes[stratum] - seen[stratum]) * rand.nextDouble() < targets[stratum] - selected[stratum]) {
+	  result[total++] = start + i;
+	  selected[stratum]++;
+	}
+	seen[stratum]++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Determines the indices of the rows to read, in ascending order.
+   *
+   * @param file the file to read from
+   * @return the row indices
+   * @throws Exception if determining the rows fails
+   */
+  protected int[] selectRows(NetcdfFile file) throws Exception {
+    int n;
+
+    n = (int) Math.round(m_NumRows * m_SampleSize / 100.0);
+
+    switch (m_Sampling) {
+      case SAMPLING_NONE:
+	return selectAll();
+      case SAMPLING_RANDOM:
+	return selectRandom(n);
+      case SAMPLING_STRATIFIED:
+	return selectStratified(file);
+      case SAMPLING_SYSTEMATIC:
+	return selectSystematic(n);
+      default:
+	throw new IllegalStateException("Unhandled sampling type: " + m_Sampling);
+    }
+  }
+
+  /**
+   * Determines the maximum gap (in rows) between selected rows of the
+   * variable that still get read in one go: skipping over up to
+   * {@link #MAX_GAP_BYTES} bytes is cheaper than a separate read. The
+   * narrower the rows, the more rows get bridged, e.g., at low sampling
+   * rates the selected rows of a numeric column get read in whole chunks
+   * and the rows in-between discarded.
+   *
+   * @param var the variable to determine the gap for
+   * @return the maximum gap, at least 1
+   */
+  protected int getMaxGap(Variable var) {
+    long width;
+    int[] shape;
+    int i;
+
+    shape = var.getShape();
+    width = var.getElementSize();
+    for (i = 1; i < shape.length; i++)
+      width *= shape[i];
+
+    return (int) Math.max(1, MAX_GAP_BYTES / Math.max(1, width));
+  }
+
+  /**
+   * Groups the (ascending) row indices into blocks that get read with a
+   * single section read each. Rows that are at most maxGap apart end up in
+   * the same contiguous block, as long as the block does not span more than
+   * {@link #CHUNK_SIZE} rows. Rows further apart end up in the same strided
+   * block as long as the distance between them stays the same (e.g.,
+   * systematic sampling), with at most {@link #CHUNK_SIZE} rows per block.
+   *
+   * @param rows the row indices
+   * @param maxGap the maximum gap between rows of a contiguous block, see
+   * 		{@link #getMaxGap(Variable)}
+   * @return the blocks, each block is a range [from, to) of the row indices
+   *         plus the stride (1 for contiguous blocks)
+   */
+  protected List<int[]> coalesce(int[] rows, int maxGap) {
+    List<int[]> result;
+    int from;
+    int stride;
+    int diff;
+    int i;
+
+    result = new ArrayList<int[]>();
+    i = 0;
+    while (i < rows.length) {
+      from = i;
+      stride = 1;
+      if ((i + 1 < rows.length) && (rows[i + 1] - rows[i] > maxGap))
+	stride = rows[i + 1] - rows[i];
+      while (i + 1 < rows.length) {
+	diff = rows[i + 1] - rows[i];
+	if (stride == 1) {
+	  if ((diff > maxGap) || (rows[i + 1] - rows[from] >= CHUNK_SIZE))
+	    break;
+	}
+	else {
+	  if ((diff != stride) || (i + 1 - from >= CHUNK_SIZE))
+	    break;
+	}
+	i++;
+      }
+      i++;
+      result.add(new int[]{from, i, stride});
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the value at the specified position of the array into the internal
+   * format of the attribute.
+   *
+   * @param att the attribute the value belongs to
+   * @param array the data read from the variable
+   * @param pos the row in the array
+   * @param df the format for parsing dates stored as STRING
+   * @return the internal value
+   * @throws Exception if parsing of the value fails
+   */
+  protected double getValue(Attribute att, Array array, int pos, SimpleDateFormat df) throws Exception {
+    String str;
+    int index;
+
+    switch (att.type()) {
+      case Attribute.NUMERIC:
+	return array.getDouble(pos);
+      case Attribute.DATE:
+	if (array.getDataType() == DataType.LONG) {
+	  if (array.getLong(pos) == Long.MIN_VALUE)
+	    return Utils.missingValue();
+	  return array.getLong(pos);
+	}
+	str = ((ArrayChar) array).getString(pos);
+	if (str.equals("?"))
+	  return Utils.missingValue();
+	return df.parse(str).getTime();
+      case Attribute.NOMINAL:
+	str = ((ArrayChar) array).getString(pos);
+	index = str.equals("?") ? -1 : att.indexOfValue(str);
+	if (index == -1)
+	  return Utils.missingValue();
+	return index;
+      case Attribute.STRING:
+	str = ((ArrayChar) array).getString(pos);
+	if (str.equals("?"))
+	  return Utils.missingValue();
+	return att.addStringValue(str);
+      default:
+	throw new IllegalStateException("Unhandled attribute type: " + Attribute.typeToString(att.type()));
+    }
+  }
+
+  /**
+   * Reads the specified rows. Each variable is read block-wise, see
+   * {@link #coalesce(int[], int)}, using the gap suitable for its row width.
+   * Numeric attributes stored in the numeric matrix are read with a single
+   * section read per block.
+   *
+   * @param file the file to read from
+   * @param rows the (ascending) indices of the rows to read
+   * @param header the header to use, collects the values of string attributes
+   * @return the data
+   * @throws Exception if reading fails
+   */
+  protected Instances readRows(NetcdfFile file, int[] rows, Instances header) throws Exception {
+    Instances result;
+    double[][] values;
+    SimpleDateFormat df;
+    Variable var;
+    Variable matrix;
+    Array array;
+    int numNumeric;
+    int start;
+    int last;
+    int stride;
+    int i;
+    int n;
+
+    result = new Instances(header, rows.length);
+    values = new double[rows.length][result.numAttributes()];
+    df = new SimpleDateFormat(NetCDFSaver.DATE_FORMAT);
+
+    for (i = 0; i < result.numAttributes(); i++) {
+      if (m_Columns[i] > -1)
+	continue;
+      var = file.getRootGroup().findVariable(m_Variables[i]);
+      for (int[] block: coalesce(rows, getMaxGap(var))) {
+	start  = rows[block[0]];
+	last   = rows[block[1] - 1];
+	stride = block[2];
+	array  = readSection(var, start, last, stride);
+	for (n = block[0]; n < block[1]; n++)
+	  values[n][i] = getValue(result.attribute(i), array, (rows[n] - start) / stride, df);
+      }
+    }
+
+    matrix = file.getRootGroup().findVariable(NetCDFSaver.MATRIX_VARIABLE);
+    if (matrix != null) {
+      numNumeric = matrix.getShape()[1];
+      for (int[] block: coalesce(rows, getMaxGap(matrix))) {
+	start  = rows[block[0]];
+	last   = rows[block[1] - 1];
+	stride = block[2];
+	array  = readSection(matrix, start, last, stride);
+	for (i = 0; i < result.numAttributes(); i++) {
+	  if (m_Columns[i] == -1)
+	    continue;
+	  for (n = block[0]; n < block[1]; n++)
+	    values[n][i] = array.getDouble((rows[n] - start) / stride * numNumeric + m_Columns[i]);
+	}
+      }
+    }
+
+    for (n = 0; n < values.length; n++)
+      result.add(new DenseInstance(1.0, values[n]));
+
+    return result;
+  }
+
   /**
    * Determines and returns (if possible) the structure (internally the header)
    * of the data set as an empty set of instances.
@@ -183,27 +1139,23 @@ public class NetCDFLoader
    */
   @Override
   public Instances getStructure() throws IOException {
-    if ((m_File == null) && (m_URL == null)) {
-      throw new IOException("No source (file/URL) has been specified");
+    if ((m_File == null) && (m_URL == null) && (m_Data == null)) {
+      throw new IOException("No source (file/URL/stream) has been specified");
     }
 
     if (m_structure == null) {
+      NetcdfFile file = null;
       try {
-	NetcdfFile file;
-	if (!m_File.isEmpty()) {
-	  if (!new File(m_File).exists())
-	    throw new IOException("File '" + m_File + "' does not exist!");
-	  file = NetcdfFile.open(m_File);
-	}
-	else {
-	  file = NetcdfFile.open(m_URL);
-	}
-	// TODO
+	file = openFile();
+	m_structure = readHeader(file);
       } catch (IOException ioe) {
         // just re-throw it
         throw ioe;
       } catch (Exception e) {
         throw new RuntimeException(e);
+      } finally {
+	if (file != null)
+	  file.close();
       }
     }
 
@@ -213,15 +1165,15 @@ public class NetCDFLoader
   /**
    * Return the full data set. If the structure hasn't yet been determined by a
    * call to getStructure then method should do so before processing the rest of
-   * the data set.
+   * the data set. If sampling is enabled, only the selected rows get read.
    *
    * @return the structure of the data set as an empty set of Instances
    * @throws java.io.IOException if there is no source or parsing fails
    */
   @Override
   public Instances getDataSet() throws IOException {
-    if ((m_File == null) && (m_URL == null)) {
-      throw new IOException("No source (file/URL) has been specified");
+    if ((m_File == null) && (m_URL == null) && (m_Data == null)) {
+      throw new IOException("No source (file/URL/stream) has been specified");
     }
 
     if (getRetrieval() == INCREMENTAL) {
@@ -234,29 +1186,154 @@ public class NetCDFLoader
       getStructure();
     }
 
-    Instances result = null;
+    Instances result;
+    NetcdfFile file = null;
 
     try {
-      // TODO
+      file = openFile();
+      result = readRows(file, selectRows(file), m_structure);
+    } catch (IOException ioe) {
+      // just re-throw it
+      throw ioe;
     } catch (Exception ex) {
-      System.err.println("Failed to load NetCDF file");
-      ex.printStackTrace();
+      throw new IOException(ex);
+    } finally {
+      if (file != null)
+	file.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the column statistics that the saver computed when writing
+   * the data. Only the header of the file gets read.
+   *
+   * @return the statistics, one per attribute (null if not available)
+   * @throws java.io.IOException if there is no source or reading fails
+   */
+  public NetCDFStatistics[] getStatistics() throws IOException {
+    NetCDFStatistics[] result;
+    NetcdfFile file;
+    Variable var;
+    int i;
+
+    if (m_structure == null) {
+      getStructure();
+    }
+
+    file = null;
+    try {
+      file = openFile();
+      result = new NetCDFStatistics[m_Variables.length];
+      for (i = 0; i < m_Variables.length; i++) {
+	var = file.getRootGroup().findVariable(m_Variables[i]);
+	if (var != null)
+	  result[i] = NetCDFStatistics.fromVariable(var);
+      }
+    } finally {
+      if (file != null)
+	file.close();
     }
 
     return result;
   }
 
   /**
-   * JSONLoader is unable to process a data set incrementally.
+   * Closes the file that gets read incrementally, if any.
+   */
+  protected void closeIncremental() {
+    if (m_IncrementalFile != null) {
+      try {
+	m_IncrementalFile.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+    m_IncrementalFile   = null;
+    m_IncrementalRows   = null;
+    m_IncrementalBlock  = null;
+    m_IncrementalOffset = 0;
+    m_IncrementalPos    = 0;
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data set
+   * or returns null if there are no more instances to get. The (selected)
+   * rows get read in blocks of {@link #BLOCK_SIZE} rows, the file stays open
+   * until all rows have been read or the loader gets reset. As with other
+   * incremental loaders, string attributes of the structure only contain the
+   * value of the current instance.
    *
-   * @param structure ignored
-   * @return never returns without throwing an exception
-   * @throws java.io.IOException always. JSONLoader is unable to process a data set
-   *           incrementally.
+   * @param structure the dataset header information, will get updated in
+   *          case of string attributes
+   * @return the next instance in the data set as an Instance object or null if
+   *         there are no more instances to be read
+   * @throws java.io.IOException if there is an error during parsing or if
+   *           getDataSet has been called
    */
   @Override
   public Instance getNextInstance(Instances structure) throws IOException {
-    throw new IOException("NetCDFLoader can't read data sets incrementally.");
+    Instance inst;
+    Instance result;
+    double[] values;
+    int[] rows;
+    int i;
+
+    if ((m_File == null) && (m_URL == null) && (m_Data == null)) {
+      throw new IOException("No source (file/URL/stream) has been specified");
+    }
+
+    if (getRetrieval() == BATCH) {
+      throw new IOException(
+        "Cannot mix getting Instances in both incremental and batch modes");
+    }
+
+    setRetrieval(INCREMENTAL);
+    if (m_structure == null) {
+      getStructure();
+    }
+
+    try {
+      if (m_IncrementalRows == null) {
+	m_IncrementalFile = openFile();
+	m_IncrementalRows = selectRows(m_IncrementalFile);
+      }
+
+      if ((m_IncrementalBlock == null) || (m_IncrementalPos >= m_IncrementalBlock.numInstances())) {
+	if (m_IncrementalOffset >= m_IncrementalRows.length) {
+	  if (m_IncrementalFile != null)
+	    m_IncrementalFile.close();
+	  m_IncrementalFile = null;
+	  return null;
+	}
+	rows = new int[Math.min(BLOCK_SIZE, m_IncrementalRows.length - m_IncrementalOffset)];
+	System.arraycopy(m_IncrementalRows, m_IncrementalOffset, rows, 0, rows.length);
+	m_IncrementalBlock = readRows(m_IncrementalFile, rows, new Instances(m_structure, 0).stringFreeStructure());
+	m_IncrementalOffset += rows.length;
+	m_IncrementalPos = 0;
+      }
+    } catch (IOException ioe) {
+      closeIncremental();
+      throw ioe;
+    } catch (Exception ex) {
+      closeIncremental();
+      throw new IOException(ex);
+    }
+
+    inst = m_IncrementalBlock.instance(m_IncrementalPos++);
+    values = inst.toDoubleArray();
+    for (i = 0; i < structure.numAttributes(); i++) {
+      if (structure.attribute(i).isString() && !inst.isMissing(i)) {
+	structure.attribute(i).setStringValue(inst.stringValue(i));
+	values[i] = 0;
+      }
+    }
+    result = new DenseInstance(1.0, values);
+    result.setDataset(structure);
+
+    return result;
   }
 
   /**
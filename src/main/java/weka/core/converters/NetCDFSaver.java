@@ -25,6 +25,8 @@ import ucar.ma2.Array;
 import ucar.ma2.ArrayChar;
 import ucar.ma2.DataType;
 import ucar.ma2.Index;
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFile;
 import ucar.nc2.NetcdfFileWriter;
 import ucar.nc2.Variable;
 import weka.core.Attribute;
@@ -36,8 +38,10 @@ import weka.core.Option;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -47,6 +51,8 @@ import java.util.Vector;
  * Writes the data to NetCDF files.<br/>
  * Dates are either stored as STRING (format: yyyy-MM-dd HH:mm:ss.SSS) or as LONG (Java epoch, msec since 1970).<br/>
  * Uses '?' for missing values in strings and NaN for numeric values.<br/>
+ * Column statistics (range, mean/variance, missing values, label counts) are stored as attributes of the variables.<br/>
+ * In append mode, the data gets appended to an existing file that was created with an unlimited record dimension; nominal labels get extended if they fit.<br/>
  * For more information see:<br/>
  * http://www.unidata.ucar.edu/software/netcdf/<br/>
  * http://www.unidata.ucar.edu/software/thredds/current/netcdf-java/tutorial/
@@ -70,6 +76,27 @@ import java.util.Vector;
  *  The maximum length for strings.
  *  (default: 255)</pre>
  * 
+ * <pre> -numeric-matrix
+ *  Whether to store all numeric attributes in a single row-major
+ *  2-D variable (num_instances x num_numeric).
+ *  (default: no)</pre>
+ * 
+ * <pre> -unlimited
+ *  Whether to use an unlimited record dimension, allowing
+ *  data to be appended later on.
+ *  (default: no)</pre>
+ * 
+ * <pre> -append
+ *  Whether to append the data to an existing file (implies -unlimited
+ *  when creating the file).
+ *  (default: no)</pre>
+ * 
+ * <pre> -header-space &lt;bytes&gt;
+ *  The extra space in bytes to reserve in the header of files with
+ *  an unlimited record dimension, for updating labels and statistics
+ *  when appending without rewriting the file.
+ *  (default: 16384)</pre>
+ * 
  <!-- options-end -->
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
@@ -84,12 +111,54 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
   /** the date format string. */
   public final static String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
 
+  /** the prefix for variables that represent attributes. */
+  public final static String VARIABLE_PREFIX = "att:";
+
+  /** the global attribute storing the relation name. */
+  public final static String ATT_RELATION = "weka_relation";
+
+  /** the variable attribute storing the original attribute name. */
+  public final static String ATT_NAME = "weka_name";
+
+  /** the variable attribute storing the attribute type. */
+  public final static String ATT_TYPE = "weka_type";
+
+  /** the variable attribute storing the labels of a nominal attribute. */
+  public final static String ATT_LABELS = "weka_labels";
+
+  /** the variable attribute storing the format of a date attribute. */
+  public final static String ATT_DATE_FORMAT = "weka_date_format";
+
+  /** the variable attribute storing the column in the numeric matrix. */
+  public final static String ATT_COLUMN = "weka_column";
+
+  /** the name of the variable holding the numeric matrix. */
+  public final static String MATRIX_VARIABLE = "numeric_matrix";
+
+  /** the extra space (in bytes) reserved in the header of files with an unlimited record dimension. */
+  public final static int EXTRA_HEADER_SPACE = 16384;
+
   /** whether to save date variables as LONG instead of STRING. */
   protected boolean m_DateAsLong = false;
 
   /** the maximum length for strings. */
   protected int m_MaxLenString = 255;
 
+  /** whether to store the numeric attributes in a single 2-D variable. */
+  protected boolean m_NumericMatrix = false;
+
+  /** whether to use an unlimited record dimension. */
+  protected boolean m_Unlimited = false;
+
+  /** whether to append to an existing file. */
+  protected boolean m_Append = false;
+
+  /** the existing file to append to. */
+  protected File m_AppendFile = null;
+
+  /** the extra space (in bytes) to reserve in the header. */
+  protected int m_HeaderSpace = EXTRA_HEADER_SPACE;
+
   /**
    * Constructor.
    */
@@ -110,6 +179,11 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
         + "or as LONG (Java epoch, msec since 1970).\n"
         + "Uses '?' for missing values in strings and NaN for numeric values."
         + "\n"
+        + "Column statistics (range, mean/variance, missing values, label "
+        + "counts) are stored as attributes of the variables.\n"
+        + "In append mode, the data gets appended to an existing file that was "
+        + "created with an unlimited record dimension; nominal labels get "
+        + "extended if they fit.\n"
         + "For more information see:\n"
         + "http://www.unidata.ucar.edu/software/netcdf/\n"
         + "http://www.unidata.ucar.edu/software/thredds/current/netcdf-java/tutorial/";
@@ -172,6 +246,31 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
         + "\t(default: 255)",
         "max-len-string", 1, "-max-len-string <num>"));
 
+    result.addElement(new Option(
+        "\tWhether to store all numeric attributes in a single row-major\n"
+        + "\t2-D variable (num_instances x num_numeric).\n"
+        + "\t(default: no)",
+        "numeric-matrix", 0, "-numeric-matrix"));
+
+    result.addElement(new Option(
+        "\tWhether to use an unlimited record dimension, allowing\n"
+        + "\tdata to be appended later on.\n"
+        + "\t(default: no)",
+        "unlimited", 0, "-unlimited"));
+
+    result.addElement(new Option(
+        "\tWhether to append the data to an existing file (implies -unlimited\n"
+        + "\twhen creating the file).\n"
+        + "\t(default: no)",
+        "append", 0, "-append"));
+
+    result.addElement(new Option(
+        "\tThe extra space in bytes to reserve in the header of files with\n"
+        + "\tan unlimited record dimension, for updating labels and statistics\n"
+        + "\twhen appending without rewriting the file.\n"
+        + "\t(default: " + EXTRA_HEADER_SPACE + ")",
+        "header-space", 1, "-header-space <bytes>"));
+
     return result.elements();
   }
 
@@ -197,6 +296,18 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
     result.add("-max-len-string");
     result.add("" + getMaxLenString());
 
+    if (getNumericMatrix())
+      result.add("-numeric-matrix");
+
+    if (getUnlimited())
+      result.add("-unlimited");
+
+    if (getAppend())
+      result.add("-append");
+
+    result.add("-header-space");
+    result.add("" + getHeaderSpace());
+
     return result.toArray(new String[result.size()]);
   }
 
@@ -217,6 +328,18 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
     else
       setMaxLenString(255);
 
+    setNumericMatrix(Utils.getFlag("numeric-matrix", options));
+
+    setUnlimited(Utils.getFlag("unlimited", options));
+
+    setAppend(Utils.getFlag("append", options));
+
+    tmpStr = Utils.getOption("header-space", options);
+    if (tmpStr.length() != 0)
+      setHeaderSpace(Integer.parseInt(tmpStr));
+    else
+      setHeaderSpace(EXTRA_HEADER_SPACE);
+
     super.setOptions(options);
   }
 
@@ -254,7 +377,7 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
    * @return 		tip text for this property suitable for
    * 			displaying in the explorer/experimenter gui
    */
-  public String maxTipText() {
+  public String maxLenStringTipText() {
     return "The maximum.";
   }
 
@@ -276,6 +399,164 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
     m_MaxLenString = value;
   }
 
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numericMatrixTipText() {
+    return
+      "If enabled, all numeric attributes get stored in a single row-major "
+        + "2-D variable, turning the reading of rows into contiguous reads.";
+  }
+
+  /**
+   * Get whether to store the numeric attributes in a single 2-D variable.
+   *
+   * @return true if stored as matrix.
+   */
+  public boolean getNumericMatrix() {
+    return m_NumericMatrix;
+  }
+
+  /**
+   * Set whether to store the numeric attributes in a single 2-D variable.
+   *
+   * @param value true if stored as matrix.
+   */
+  public void setNumericMatrix(boolean value) {
+    m_NumericMatrix = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String unlimitedTipText() {
+    return "If enabled, an unlimited record dimension is used, allowing data to be appended later on.";
+  }
+
+  /**
+   * Get whether to use an unlimited record dimension.
+   *
+   * @return true if unlimited.
+   */
+  public boolean getUnlimited() {
+    return m_Unlimited;
+  }
+
+  /**
+   * Set whether to use an unlimited record dimension.
+   *
+   * @param value true if unlimited.
+   */
+  public void setUnlimited(boolean value) {
+    m_Unlimited = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String appendTipText() {
+    return
+      "If enabled, the data gets appended to an existing file, which must have "
+        + "been created with an unlimited record dimension.";
+  }
+
+  /**
+   * Get whether to append to an existing file.
+   *
+   * @return true if appending.
+   */
+  public boolean getAppend() {
+    return m_Append;
+  }
+
+  /**
+   * Set whether to append to an existing file.
+   *
+   * @param value true if appending.
+   */
+  public void setAppend(boolean value) {
+    m_Append = value;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String headerSpaceTipText() {
+    return
+      "The extra space in bytes to reserve in the header of files with an "
+        + "unlimited record dimension; if updating labels and statistics when "
+        + "appending exceeds it, the whole file gets rewritten.";
+  }
+
+  /**
+   * Get the extra space to reserve in the header.
+   *
+   * @return the space in bytes.
+   */
+  public int getHeaderSpace() {
+    return m_HeaderSpace;
+  }
+
+  /**
+   * Set the extra space to reserve in the header.
+   *
+   * @param value the space in bytes.
+   * @throws IllegalArgumentException if the space is negative
+   */
+  public void setHeaderSpace(int value) {
+    if (value < 0)
+      throw new IllegalArgumentException("Header space must be at least 0, provided: " + value);
+    m_HeaderSpace = value;
+  }
+
+  /**
+   * Sets the destination file. In append mode, an existing file is left
+   * untouched, as the data gets written via the netCDF API. Otherwise, the
+   * output stream that the superclass opens on the file gets closed right
+   * away for the same reason, as it would never get closed otherwise.
+   *
+   * @param file the destination file
+   * @throws IOException if setting the destination fails
+   */
+  @Override
+  public void setDestination(File file) throws IOException {
+    m_AppendFile = null;
+    if (m_Append && file.exists() && (file.length() > 0)) {
+      m_AppendFile = file.getAbsoluteFile();
+    }
+    else {
+      super.setDestination(file);
+      if (getWriter() != null) {
+        getWriter().close();
+        resetWriter();
+      }
+    }
+  }
+
+  /**
+   * Returns the destination file.
+   *
+   * @return the file
+   */
+  @Override
+  public File retrieveFile() {
+    if (m_AppendFile != null)
+      return m_AppendFile;
+    return super.retrieveFile();
+  }
+
   /**
    * Returns the Capabilities of this saver.
    *
@@ -327,7 +608,438 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
   }
 
   /**
-   * Writes a Batch of instances.
+   * Returns the labels of the nominal attribute as a single string.
+   *
+   * @param att the nominal attribute
+   * @return the labels
+   */
+  protected String joinLabels(Attribute att) {
+    String[] labels;
+    int i;
+
+    labels = new String[att.numValues()];
+    for (i = 0; i < att.numValues(); i++)
+      labels[i] = att.value(i);
+
+    return Utils.joinOptions(labels);
+  }
+
+  /**
+   * Stores the Weka-specific information of the attribute as attributes of
+   * the variable, allowing the loader to restore the header.
+   *
+   * @param writer the writer to use
+   * @param var the variable associated with the attribute
+   * @param att the attribute to describe
+   */
+  protected void addMetaData(NetcdfFileWriter writer, Variable var, Attribute att) {
+    writer.addVariableAttribute(var, new ucar.nc2.Attribute(ATT_NAME, att.name()));
+    writer.addVariableAttribute(var, new ucar.nc2.Attribute(ATT_TYPE, Attribute.typeToString(att)));
+    switch (att.type()) {
+      case Attribute.NOMINAL:
+        writer.addVariableAttribute(var, new ucar.nc2.Attribute(ATT_LABELS, joinLabels(att)));
+        break;
+      case Attribute.DATE:
+        writer.addVariableAttribute(var, new ucar.nc2.Attribute(ATT_DATE_FORMAT, att.getDateFormat()));
+        break;
+    }
+  }
+
+  /**
+   * Stores the statistics as attributes of the variable, replacing any
+   * existing ones.
+   *
+   * @param writer the writer to use
+   * @param var the variable associated with the attribute
+   * @param stats the statistics to store
+   */
+  protected void addStatistics(NetcdfFileWriter writer, Variable var, NetCDFStatistics stats) {
+    for (ucar.nc2.Attribute meta: stats.toAttributes(var))
+      writer.addVariableAttribute(var, meta);
+  }
+
+  /**
+   * Checks whether the variable is defined over the instances dimension,
+   * i.e., holds data rather than being a placeholder for meta-data.
+   *
+   * @param var the variable to check
+   * @return true if the variable holds data
+   */
+  protected boolean hasRecords(Variable var) {
+    return (var.getRank() > 0) && var.getDimension(0).getShortName().equals("num_instances");
+  }
+
+  /**
+   * Computes the statistics of the attribute from the in-memory values.
+   *
+   * @param data the data to compute the statistics for
+   * @param index the index of the attribute
+   * @param target the attribute as stored in the file, used for determining the label indices
+   * @return the statistics
+   */
+  protected NetCDFStatistics computeStatistics(Instances data, int index, Attribute target) {
+    NetCDFStatistics result;
+    Instance inst;
+    int n;
+
+    result = new NetCDFStatistics(target);
+    for (n = 0; n < data.numInstances(); n++) {
+      inst = data.instance(n);
+      if (target.isNominal() && !inst.isMissing(index))
+        result.add(target.indexOfValue(inst.stringValue(index)));
+      else
+        result.add(inst.value(index));
+    }
+
+    return result;
+  }
+
+  /**
+   * Encodes the values of the attribute for storing them in the variable.
+   * The encoding is determined by the variable's data type and shape.
+   *
+   * @param data the data to encode
+   * @param index the index of the attribute
+   * @param var the variable to encode the data for
+   * @param df the format for dates stored as STRING
+   * @return the encoded values
+   */
+  protected Array encode(Instances data, int index, Variable var, SimpleDateFormat df) {
+    Array array;
+    ArrayChar arrayChar;
+    Index idx;
+    Attribute att;
+    Instance inst;
+    int n;
+
+    att = data.attribute(index);
+    switch (att.type()) {
+      case Attribute.NUMERIC:
+        array = Array.factory(DataType.DOUBLE, new int[]{data.numInstances()});
+        for (n = 0; n < data.numInstances(); n++) {
+          inst = data.instance(n);
+          if (inst.isMissing(index))
+            array.setDouble(n, Double.NaN);
+          else
+            array.setDouble(n, inst.value(index));
+        }
+        return array;
+      case Attribute.DATE:
+        if (var.getDataType() == DataType.LONG) {
+          array = Array.factory(DataType.LONG, new int[]{data.numInstances()});
+          for (n = 0; n < data.numInstances(); n++) {
+            inst = data.instance(n);
+            if (inst.isMissing(index))
+              array.setLong(n, Long.MIN_VALUE);
+            else
+              array.setLong(n, (long) inst.value(index));
+          }
+          return array;
+        }
+        arrayChar = new ArrayChar.D2(data.numInstances(), var.getShape()[1]);
+        idx = arrayChar.getIndex();
+        for (n = 0; n < data.numInstances(); n++) {
+          inst = data.instance(n);
+          if (inst.isMissing(index))
+            arrayChar.setString(idx.set(n), "?");
+          else
+            arrayChar.setString(idx.set(n), df.format(new Date((long) inst.value(index))));
+        }
+        return arrayChar;
+      case Attribute.NOMINAL:
+      case Attribute.STRING:
+        arrayChar = new ArrayChar.D2(data.numInstances(), var.getShape()[1]);
+        idx = arrayChar.getIndex();
+        for (n = 0; n < data.numInstances(); n++) {
+          inst = data.instance(n);
+          if (inst.isMissing(index))
+            arrayChar.setString(idx.set(n), "?");
+          else
+            arrayChar.setString(idx.set(n), inst.stringValue(index));
+        }
+        return arrayChar;
+      default:
+        throw new IllegalStateException("Unhandled attribute type: " + Attribute.typeToString(att.type()));
+    }
+  }
+
+  /**
+   * Writes the numeric attributes to the row-major matrix, in blocks of
+   * {@link NetCDFLoader#CHUNK_SIZE} rows.
+   *
+   * @param writer the writer to use
+   * @param matrix the matrix variable
+   * @param data the data to write
+   * @param columns the columns in the matrix, one per attribute (-1 if not in matrix)
+   * @param numNumeric the number of columns in the matrix
+   * @param offset the row to start writing at
+   * @throws Exception if writing fails
+   */
+  protected void writeMatrix(NetcdfFileWriter writer, Variable matrix, Instances data, int[] columns, int numNumeric, int offset) throws Exception {
+    Array array;
+    Instance inst;
+    int start;
+    int count;
+    int i;
+    int n;
+
+    for (start = 0; start < data.numInstances(); start += NetCDFLoader.CHUNK_SIZE) {
+      count = Math.min(NetCDFLoader.CHUNK_SIZE, data.numInstances() - start);
+      array = Array.factory(DataType.DOUBLE, new int[]{count, numNumeric});
+      for (n = 0; n < count; n++) {
+        inst = data.instance(start + n);
+        for (i = 0; i < data.numAttributes(); i++) {
+          if (columns[i] == -1)
+            continue;
+          if (inst.isMissing(i))
+            array.setDouble(n * numNumeric + columns[i], Double.NaN);
+          else
+            array.setDouble(n * numNumeric + columns[i], inst.value(i));
+        }
+      }
+      writer.write(matrix, new int[]{offset + start, 0}, array);
+    }
+  }
+
+  /**
+   * Creates a new file with the data.
+   *
+   * @param data the data to write
+   * @throws Exception if writing fails
+   */
+  protected void create(Instances data) throws Exception {
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, retrieveFile().getAbsolutePath());
+
+    // create header
+    Variable var[] = new Variable[data.numAttributes()];
+    // generic string length dimension/var
+    writer.addDimension(null, "str_len", m_MaxLenString);
+    writer.addVariable(null, "str", DataType.CHAR, "str_len");
+    if (m_Unlimited || m_Append) {
+      writer.addUnlimitedDimension("num_instances");
+      // leaves room for updating labels/statistics when appending, avoiding a rewrite of the file
+      writer.setExtraHeaderBytes(m_HeaderSpace);
+    }
+    else {
+      writer.addDimension(null, "num_instances", data.numInstances());
+    }
+    writer.addGroupAttribute(null, new ucar.nc2.Attribute(ATT_RELATION, data.relationName()));
+    // numeric matrix: the attribute variables are scalar placeholders for the meta-data
+    int[] columns = new int[data.numAttributes()];
+    int numNumeric = 0;
+    for (int i = 0; i < data.numAttributes(); i++) {
+      columns[i] = -1;
+      if (m_NumericMatrix && (data.attribute(i).type() == Attribute.NUMERIC))
+        columns[i] = numNumeric++;
+    }
+    Variable matrix = null;
+    if (numNumeric > 0) {
+      writer.addDimension(null, "num_numeric", numNumeric);
+      matrix = writer.addVariable(null, MATRIX_VARIABLE, DataType.DOUBLE, "num_instances num_numeric");
+    }
+    for (int i = 0; i < data.numAttributes(); i++) {
+      Attribute att = data.attribute(i);
+      String name = makeValidName(VARIABLE_PREFIX + att.name());
+      switch (att.type()) {
+        case Attribute.NUMERIC:
+          if (columns[i] > -1) {
+            var[i] = writer.addVariable(null, name, DataType.DOUBLE, "");
+            writer.addVariableAttribute(var[i], new ucar.nc2.Attribute(ATT_COLUMN, columns[i]));
+          }
+          else {
+            var[i] = writer.addVariable(null, name, DataType.DOUBLE, "num_instances");
+          }
+          break;
+        case Attribute.DATE:
+          if (m_DateAsLong) {
+            var[i] = writer.addVariable(null, name, DataType.LONG, "num_instances");
+          }
+          else {
+            writer.addDimension(null, name + "_len", DATE_FORMAT.length());
+            var[i] = writer.addVariable(null, name, DataType.CHAR, "num_instances" + " " + name + "_len");
+          }
+          break;
+        case Attribute.NOMINAL:
+          int maxLen = 0;
+          for (int n = 0; n < att.numValues(); n++)
+            maxLen = Math.max(maxLen, att.value(n).length());
+          writer.addDimension(null, name + "_len", maxLen);
+          var[i] = writer.addVariable(null, name, DataType.CHAR, "num_instances" + " " + name + "_len");
+          break;
+        case Attribute.STRING:
+          var[i] = writer.addVariable(null, name, DataType.CHAR, "num_instances" + " str_len");
+          break;
+        default:
+          throw new IllegalStateException("Unhandled attribute type: " + Attribute.typeToString(att.type()));
+      }
+      addMetaData(writer, var[i], att);
+    }
+
+    // statistics (attributes must be defined before the data section)
+    for (int i = 0; i < data.numAttributes(); i++)
+      addStatistics(writer, var[i], computeStatistics(data, i, data.attribute(i)));
+    writer.create();
+
+    // add data, one column at a time (placeholders of matrix columns hold no data)
+    SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
+    for (int i = 0; i < data.numAttributes(); i++) {
+      if (hasRecords(var[i]))
+        writer.write(var[i], encode(data, i, var[i], df));
+    }
+    if (matrix != null)
+      writeMatrix(writer, matrix, data, columns, numNumeric, 0);
+    writer.close();
+  }
+
+  /**
+   * Adds the labels of the incoming nominal attribute that are not present
+   * yet to the labels stored in the file. As values are stored as strings,
+   * this only requires the new labels to fit into the variable.
+   *
+   * @param existing the attribute as stored in the file
+   * @param incoming the attribute of the data to append
+   * @param var the variable of the attribute
+   * @return the extended attribute, the existing one if nothing was added
+   * @throws IOException if a new label exceeds the maximum length
+   */
+  protected Attribute extendLabels(Attribute existing, Attribute incoming, Variable var) throws IOException {
+    ArrayList<String> labels;
+    String label;
+    int maxLen;
+    int i;
+
+    labels = new ArrayList<String>();
+    for (i = 0; i < existing.numValues(); i++)
+      labels.add(existing.value(i));
+
+    maxLen = var.getShape()[1];
+    for (i = 0; i < incoming.numValues(); i++) {
+      label = incoming.value(i);
+      if (existing.indexOfValue(label) > -1)
+        continue;
+      if (label.length() > maxLen)
+        throw new IOException(
+          "Cannot add label '" + label + "' to attribute '" + existing.name()
+            + "', exceeds maximum length of " + maxLen + "!");
+      labels.add(label);
+    }
+
+    if (labels.size() == existing.numValues())
+      return existing;
+    else
+      return new Attribute(existing.name(), labels);
+  }
+
+  /**
+   * Checks whether the values of the string attribute fit into the variable,
+   * as longer strings would get truncated.
+   *
+   * @param data the data to append
+   * @param index the index of the string attribute
+   * @param var the variable of the attribute
+   * @throws IOException if a string exceeds the maximum length
+   */
+  protected void checkStrings(Instances data, int index, Variable var) throws IOException {
+    Instance inst;
+    String value;
+    int maxLen;
+    int n;
+
+    maxLen = var.getShape()[1];
+    for (n = 0; n < data.numInstances(); n++) {
+      inst = data.instance(n);
+      if (inst.isMissing(index))
+        continue;
+      value = inst.stringValue(index);
+      if (value.length() > maxLen)
+        throw new IOException(
+          "Cannot append string of row #" + (n + 1) + " to attribute '" + data.attribute(index).name()
+            + "', length " + value.length() + " exceeds maximum length of " + maxLen + "!");
+    }
+  }
+
+  /**
+   * Appends the data to the existing file, which must have been created with
+   * an unlimited record dimension. Only the new rows get written, the
+   * nominal labels and statistics get updated.
+   *
+   * @param data the data to append
+   * @throws Exception if the header does not match or writing fails
+   */
+  protected void append(Instances data) throws Exception {
+    NetcdfFileWriter writer = NetcdfFileWriter.openExisting(retrieveFile().getAbsolutePath());
+    try {
+      NetcdfFile file = writer.getNetcdfFile();
+      Dimension dim = file.findDimension("num_instances");
+      if ((dim == null) || !dim.isUnlimited())
+        throw new IOException("File was not created with an unlimited record dimension: " + retrieveFile());
+      int offset = dim.getLength();
+
+      // check header
+      NetCDFLoader loader = new NetCDFLoader();
+      Instances header = loader.readHeader(file);
+      if (header.numAttributes() != data.numAttributes())
+        throw new IOException(
+          "Number of attributes differ: " + header.numAttributes() + " != " + data.numAttributes());
+      Variable var[] = new Variable[data.numAttributes()];
+      Attribute[] targets = new Attribute[data.numAttributes()];
+      for (int i = 0; i < data.numAttributes(); i++) {
+        Attribute existing = header.attribute(i);
+        Attribute incoming = data.attribute(i);
+        if (!existing.name().equals(incoming.name()) || (existing.type() != incoming.type()))
+          throw new IOException(
+            "Attribute #" + (i + 1) + " differs: "
+              + existing.name() + "/" + Attribute.typeToString(existing) + " != "
+              + incoming.name() + "/" + Attribute.typeToString(incoming));
+        var[i] = file.getRootGroup().findVariable(loader.m_Variables[i]);
+        targets[i] = existing;
+        if (existing.isNominal())
+          targets[i] = extendLabels(existing, incoming, var[i]);
+        else if (existing.isString())
+          checkStrings(data, i, var[i]);
+      }
+      // update labels and statistics
+      writer.setRedefineMode(true);
+      for (int i = 0; i < data.numAttributes(); i++) {
+        if (targets[i] != header.attribute(i))
+          writer.addVariableAttribute(var[i], new ucar.nc2.Attribute(ATT_LABELS, joinLabels(targets[i])));
+        NetCDFStatistics existing = NetCDFStatistics.fromVariable(var[i]);
+        if (existing != null) {
+          existing.merge(computeStatistics(data, i, targets[i]));
+          addStatistics(writer, var[i], existing);
+        }
+      }
+      if (writer.setRedefineMode(false))
+        System.err.println(
+          "Header of " + retrieveFile() + " outgrew the reserved space, file got rewritten; "
+            + "consider a larger -header-space when creating files that get appended to.");
+
+      // append data at the current record offset, one column at a time
+      if (data.numInstances() > 0) {
+        // variables get looked up again, in case the header change required a rewrite
+        file = writer.getNetcdfFile();
+        SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
+        for (int i = 0; i < data.numAttributes(); i++) {
+          Variable v = file.getRootGroup().findVariable(loader.m_Variables[i]);
+          if (!hasRecords(v))
+            continue;
+          int[] origin = new int[v.getRank()];
+          origin[0] = offset;
+          writer.write(v, origin, encode(data, i, v, df));
+        }
+        Variable matrix = file.getRootGroup().findVariable(MATRIX_VARIABLE);
+        if (matrix != null)
+          writeMatrix(writer, matrix, data, loader.m_Columns, matrix.getShape()[1], offset);
+      }
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Writes a Batch of instances. In append mode, the instances get appended
+   * to the output file if it already exists.
    *
    * @throws java.io.IOException throws IOException if saving in batch mode is not
    *           possible
@@ -351,115 +1063,10 @@ public class NetCDFSaver extends AbstractFileSaver implements BatchConverter {
 
     Instances data = getInstances();
     try {
-      NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, retrieveFile().getAbsolutePath());
-
-      // create header
-      Variable var[] = new Variable[data.numAttributes()];
-      int[] maxLengths = new int[data.numAttributes()];
-      // generic string length dimension/var
-      writer.addDimension(null, "str_len", m_MaxLenString);
-      writer.addVariable(null, "str", DataType.CHAR, "str_len");
-      writer.addDimension(null, "num_instances", data.numInstances());
-      for (int i = 0; i < data.numAttributes(); i++) {
-	Attribute att = data.attribute(i);
-        String name = makeValidName("att:" + att.name());
-        maxLengths[i] = -1;
-	switch (att.type()) {
-          case Attribute.NUMERIC:
-	    var[i] = writer.addVariable(null, name, DataType.DOUBLE, "num_instances");
-	    break;
-	  case Attribute.DATE:
-	    if (m_DateAsLong) {
-	      var[i] = writer.addVariable(null, name, DataType.LONG, "num_instances");
-            }
-	    else {
-              writer.addDimension(null, name + "_len", DATE_FORMAT.length());
-              var[i] = writer.addVariable(null, name, DataType.CHAR, "num_instances" + " " + name + "_len");
-              maxLengths[i] = DATE_FORMAT.length();
-	    }
-	    break;
-	  case Attribute.NOMINAL:
-	    int maxLen = 0;
-	    for (int n = 0; n < att.numValues(); n++)
-	      maxLen = Math.max(maxLen, att.value(n).length());
-            writer.addDimension(null, name + "_len", maxLen);
-            var[i] = writer.addVariable(null, name, DataType.CHAR, "num_instances" + " " + name + "_len");
-            maxLengths[i] = maxLen;
-	    break;
-	  case Attribute.STRING:
-	    var[i] = writer.addVariable(null, name, DataType.CHAR, "num_instances" + " str_len");
-            maxLengths[i] = m_MaxLenString;
-	    break;
-	  default:
-	    throw new IllegalStateException("Unhandled attribute type: " + Attribute.typeToString(att.type()));
-	}
-      }
-      writer.create();
-
-      // add data
-      Array array;
-      ArrayChar arrayChar;
-      Index index;
-      SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
-      for (int i = 0; i < data.numAttributes(); i++) {
-	Attribute att = data.attribute(i);
-        int[] shape = var[i].getShape();
-	switch (att.type()) {
-	  case Attribute.NUMERIC:
-	    array = Array.factory(DataType.DOUBLE, new int[]{shape[0]});
-	    for (int n = 0; n < data.numInstances(); n++) {
-              Instance inst = data.instance(n);
-              if (inst.isMissing(i))
-                array.setDouble(n, Double.NaN);
-              else
-                array.setDouble(n, inst.value(i));
-            }
-	    writer.write(var[i], array);
-	    break;
-	  case Attribute.DATE:
-	    if (m_DateAsLong) {
-	      array = Array.factory(DataType.LONG, new int[]{shape[0]});
-	      for (int n = 0; n < data.numInstances(); n++) {
-                Instance inst = data.instance(n);
-                if (inst.isMissing(i))
-                  array.setLong(n, Long.MIN_VALUE);
-                else
-                  array.setLong(n, (long) inst.value(i));
-              }
-	      writer.write(var[i], array);
-	    }
-	    else {
-              arrayChar = new ArrayChar.D2(shape[0], shape[1]);
-              index = arrayChar.getIndex();
-              for (int n = 0; n < data.numInstances(); n++) {
-                Instance inst = data.instance(n);
-                Date date = new Date((long) inst.value(i));
-                if (inst.isMissing(i))
-                  arrayChar.setString(index.set(n), "?");
-                else
-                  arrayChar.setString(index.set(n), df.format(date));
-              }
-              writer.write(var[i], arrayChar);
-            }
-	    break;
-	  case Attribute.NOMINAL:
-	  case Attribute.STRING:
-	    arrayChar = new ArrayChar.D2(shape[0], shape[1]);
-            index = arrayChar.getIndex();
-	    for (int n = 0; n < data.numInstances(); n++) {
-              Instance inst = data.instance(n);
-              if (inst.isMissing(i))
-                arrayChar.setString(index.set(n), "?");
-              else
-                arrayChar.setString(index.set(n), inst.stringValue(i));
-            }
-            writer.write(var[i], arrayChar);
-	    break;
-	  default:
-	    throw new IllegalStateException("Unhandled attribute type: " + Attribute.typeToString(att.type()));
-	}
-      }
-      writer.close();
+      if (m_Append && retrieveFile().exists() && (retrieveFile().length() > 0))
+        append(data);
+      else
+        create(data);
     } catch (Exception e) {
       throw new IOException(e);
     }
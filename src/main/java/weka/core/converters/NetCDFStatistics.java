@@ -0,0 +1,386 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NetCDFStatistics.java
+ * Copyright (C) 2015 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.Variable;
+import weka.core.Attribute;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statistics of a single column, computed by {@link NetCDFSaver} before
+ * writing the data and stored as attributes of the variable. Numeric and
+ * date columns record min/max and mean/variance, nominal columns the counts
+ * per label. The range is stored as <code>actual_range</code> for DOUBLE
+ * variables holding the data, as CF requires the range to have the type of
+ * the variable; otherwise (dates, numeric matrix placeholders) it is stored
+ * as <code>weka_range</code>. All columns record the number of
+ * present and missing values.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision: 11573 $
+ */
+public class NetCDFStatistics
+  implements Serializable, RevisionHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3071558232811658232L;
+
+  /** the variable attribute for the range of the values. */
+  public final static String ATT_ACTUAL_RANGE = "actual_range";
+
+  /** the variable attribute for the range of the values, if actual_range does not apply. */
+  public final static String ATT_RANGE = "weka_range";
+
+  /** the variable attribute for the number of non-missing values. */
+  public final static String ATT_COUNT = "weka_count";
+
+  /** the variable attribute for the number of missing values. */
+  public final static String ATT_MISSING = "weka_missing";
+
+  /** the variable attribute for the mean. */
+  public final static String ATT_MEAN = "weka_mean";
+
+  /** the variable attribute for the (sample) variance. */
+  public final static String ATT_VARIANCE = "weka_variance";
+
+  /** the variable attribute for the label counts. */
+  public final static String ATT_LABEL_COUNTS = "weka_label_counts";
+
+  /** the number of non-missing values. */
+  protected long m_Count;
+
+  /** the number of missing values. */
+  protected long m_Missing;
+
+  /** the minimum. */
+  protected double m_Min = Double.NaN;
+
+  /** the maximum. */
+  protected double m_Max = Double.NaN;
+
+  /** the mean. */
+  protected double m_Mean;
+
+  /** the sum of squared differences from the mean. */
+  protected double m_SumSq;
+
+  /** the counts per label, null if not nominal. */
+  protected long[] m_LabelCounts;
+
+  /** whether to compute min/max and mean/variance. */
+  protected boolean m_Numeric;
+
+  /**
+   * Initializes the statistics for the attribute.
+   *
+   * @param att the attribute to compute the statistics for
+   */
+  public NetCDFStatistics(Attribute att) {
+    this(att.isNominal() ? att.numValues() : -1, att.isNumeric());
+  }
+
+  /**
+   * Initializes the statistics.
+   *
+   * @param numLabels the number of labels, -1 if not nominal
+   * @param numeric whether to compute min/max and mean/variance
+   */
+  protected NetCDFStatistics(int numLabels, boolean numeric) {
+    if (numLabels > -1)
+      m_LabelCounts = new long[numLabels];
+    m_Numeric = numeric;
+  }
+
+  /**
+   * Adds the value (internal format) of the attribute. For nominal
+   * attributes, the value is the label index; for string attributes only
+   * missing and present values get counted.
+   *
+   * @param value the value to add, can be missing
+   */
+  public void add(double value) {
+    double delta;
+
+    if (Utils.isMissingValue(value)) {
+      m_Missing++;
+      return;
+    }
+
+    m_Count++;
+    if (m_LabelCounts != null) {
+      m_LabelCounts[(int) value]++;
+    }
+    else if (m_Numeric) {
+      if ((m_Count == 1) || (value < m_Min))
+	m_Min = value;
+      if ((m_Count == 1) || (value > m_Max))
+	m_Max = value;
+      // Welford's algorithm
+      delta = value - m_Mean;
+      m_Mean += delta / m_Count;
+      m_SumSq += delta * (value - m_Mean);
+    }
+  }
+
+  /**
+   * Merges the statistics of other values into these statistics, e.g., when
+   * appending data. Label counts get extended if the other statistics have
+   * more labels.
+   *
+   * @param other the statistics to merge
+   */
+  public void merge(NetCDFStatistics other) {
+    long[] counts;
+    double delta;
+    double count;
+    int i;
+
+    if ((m_LabelCounts != null) && (other.m_LabelCounts != null)) {
+      counts = new long[Math.max(m_LabelCounts.length, other.m_LabelCounts.length)];
+      for (i = 0; i < m_LabelCounts.length; i++)
+	counts[i] += m_LabelCounts[i];
+      for (i = 0; i < other.m_LabelCounts.length; i++)
+	counts[i] += other.m_LabelCounts[i];
+      m_LabelCounts = counts;
+    }
+    else if (other.m_Numeric && (other.m_Count > 0)) {
+      if (!m_Numeric || (m_Count == 0)) {
+	m_Min  = other.m_Min;
+	m_Max  = other.m_Max;
+	m_Mean = 0;
+	m_SumSq = 0;
+      }
+      else {
+	m_Min = Math.min(m_Min, other.m_Min);
+	m_Max = Math.max(m_Max, other.m_Max);
+      }
+      m_Numeric = true;
+      // Chan et al., pairwise update
+      count = (double) m_Count + other.m_Count;
+      delta = other.m_Mean - m_Mean;
+      m_SumSq += other.m_SumSq + delta * delta * m_Count * other.m_Count / count;
+      m_Mean += delta * other.m_Count / count;
+    }
+
+    m_Count   += other.m_Count;
+    m_Missing += other.m_Missing;
+  }
+
+  /**
+   * Returns the number of non-missing values.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return m_Count;
+  }
+
+  /**
+   * Returns the number of missing values.
+   *
+   * @return the count
+   */
+  public long getMissing() {
+    return m_Missing;
+  }
+
+  /**
+   * Returns the minimum.
+   *
+   * @return the minimum, NaN if not available
+   */
+  public double getMin() {
+    return m_Min;
+  }
+
+  /**
+   * Returns the maximum.
+   *
+   * @return the maximum, NaN if not available
+   */
+  public double getMax() {
+    return m_Max;
+  }
+
+  /**
+   * Returns the mean.
+   *
+   * @return the mean, NaN if not available
+   */
+  public double getMean() {
+    if (!m_Numeric || (m_Count == 0))
+      return Double.NaN;
+    return m_Mean;
+  }
+
+  /**
+   * Returns the (sample) variance.
+   *
+   * @return the variance, NaN if not available
+   */
+  public double getVariance() {
+    if (!m_Numeric || (m_Count < 2))
+      return Double.NaN;
+    return m_SumSq / (m_Count - 1);
+  }
+
+  /**
+   * Returns the counts per label.
+   *
+   * @return the counts, null if not nominal
+   */
+  public long[] getLabelCounts() {
+    return m_LabelCounts;
+  }
+
+  /**
+   * Turns the statistics into variable attributes. Counts are stored as
+   * doubles, as netCDF-3 files have no 64-bit integer attributes.
+   *
+   * @param var the variable the attributes are for, determines the name of the range attribute
+   * @return the attributes
+   */
+  public List<ucar.nc2.Attribute> toAttributes(Variable var) {
+    List<ucar.nc2.Attribute> result;
+    double[] counts;
+    int i;
+
+    result = new ArrayList<ucar.nc2.Attribute>();
+    result.add(new ucar.nc2.Attribute(ATT_COUNT, (double) m_Count));
+    result.add(new ucar.nc2.Attribute(ATT_MISSING, (double) m_Missing));
+    if (m_LabelCounts != null) {
+      if (m_LabelCounts.length > 0) {
+	counts = new double[m_LabelCounts.length];
+	for (i = 0; i < m_LabelCounts.length; i++)
+	  counts[i] = m_LabelCounts[i];
+	result.add(new ucar.nc2.Attribute(ATT_LABEL_COUNTS, Array.factory(counts)));
+      }
+    }
+    else if (m_Numeric && (m_Count > 0)) {
+      result.add(new ucar.nc2.Attribute(getRangeAttribute(var), Array.factory(new double[]{m_Min, m_Max})));
+      result.add(new ucar.nc2.Attribute(ATT_MEAN, getMean()));
+      if (m_Count > 1)
+	result.add(new ucar.nc2.Attribute(ATT_VARIANCE, getVariance()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the attribute to store the range under: the CF
+   * <code>actual_range</code> for DOUBLE variables that hold the data,
+   * <code>weka_range</code> otherwise.
+   *
+   * @param var the variable to get the name for
+   * @return the name
+   */
+  public static String getRangeAttribute(Variable var) {
+    if ((var.getDataType() == DataType.DOUBLE) && (var.getRank() > 0))
+      return ATT_ACTUAL_RANGE;
+    else
+      return ATT_RANGE;
+  }
+
+  /**
+   * Restores the statistics from the attributes of the variable.
+   *
+   * @param var the variable to get the statistics from
+   * @return the statistics, null if none stored
+   */
+  public static NetCDFStatistics fromVariable(Variable var) {
+    NetCDFStatistics result;
+    ucar.nc2.Attribute att;
+    int i;
+
+    if (var.findAttribute(ATT_COUNT) == null)
+      return null;
+
+    att = var.findAttribute(ATT_LABEL_COUNTS);
+    if (att != null) {
+      result = new NetCDFStatistics(att.getLength(), false);
+      for (i = 0; i < att.getLength(); i++)
+	result.m_LabelCounts[i] = att.getNumericValue(i).longValue();
+    }
+    else {
+      result = new NetCDFStatistics(-1, var.findAttribute(getRangeAttribute(var)) != null);
+    }
+
+    result.m_Count = var.findAttribute(ATT_COUNT).getNumericValue().longValue();
+    result.m_Missing = var.findAttribute(ATT_MISSING).getNumericValue().longValue();
+
+    att = var.findAttribute(getRangeAttribute(var));
+    if (att != null) {
+      result.m_Min = att.getNumericValue(0).doubleValue();
+      result.m_Max = att.getNumericValue(1).doubleValue();
+    }
+    att = var.findAttribute(ATT_MEAN);
+    if (att != null)
+      result.m_Mean = att.getNumericValue().doubleValue();
+    att = var.findAttribute(ATT_VARIANCE);
+    if (att != null)
+      result.m_SumSq = att.getNumericValue().doubleValue() * (result.m_Count - 1);
+
+    return result;
+  }
+
+  /**
+   * Returns a short description of the statistics.
+   *
+   * @return the description
+   */
+  @Override
+  public String toString() {
+    StringBuilder result;
+    int i;
+
+    result = new StringBuilder();
+    result.append("count=" + m_Count + ", missing=" + m_Missing);
+    if (m_LabelCounts != null) {
+      result.append(", labelCounts=");
+      for (i = 0; i < m_LabelCounts.length; i++)
+	result.append((i > 0 ? "," : "") + m_LabelCounts[i]);
+    }
+    else if (m_Numeric) {
+      result.append(", min=" + m_Min + ", max=" + m_Max);
+      result.append(", mean=" + getMean() + ", variance=" + getVariance());
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 11573 $");
+  }
+}
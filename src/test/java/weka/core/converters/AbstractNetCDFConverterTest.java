@@ -0,0 +1,281 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AbstractNetCDFConverterTest.java
+ * Copyright (C) 2015 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+import weka.core.Utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ancestor for the NetCDF converter tests. Runs the generic file converter
+ * tests and provides the test data and temporary files.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public abstract class AbstractNetCDFConverterTest
+  extends AbstractFileConverterTest {
+
+  /** the number of rows in the test data. */
+  public final static int NUM_ROWS = 1000;
+
+  /** the labels of the nominal attribute. */
+  public final static String[] LABELS = new String[]{"a", "b", "c"};
+
+  /** the index of the ID attribute. */
+  public final static int ATT_ID = 0;
+
+  /** the index of the nominal attribute. */
+  public final static int ATT_CLASS = 4;
+
+  /** the temporary files to remove after a test. */
+  protected List<File> m_TempFiles;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name the name of the test class
+   */
+  public AbstractNetCDFConverterTest(String name) {
+    super(name);
+  }
+
+  /**
+   * returns the loader used in the tests.
+   *
+   * @return the configured loader
+   */
+  @Override
+  public AbstractLoader getLoader() {
+    return new NetCDFLoader();
+  }
+
+  /**
+   * returns the saver used in the tests.
+   *
+   * @return the configured saver
+   */
+  @Override
+  public AbstractSaver getSaver() {
+    return new NetCDFSaver();
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_TempFiles = new ArrayList<File>();
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file: m_TempFiles) {
+      if (file.exists())
+	file.delete();
+    }
+    m_TempFiles = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns a new temporary file that does not exist yet and gets removed
+   * after the test.
+   *
+   * @return the file
+   * @throws Exception if the file cannot be created
+   */
+  protected File newTempFile() throws Exception {
+    File result;
+
+    result = File.createTempFile("weka-netcdf-", NetCDFLoader.FILE_EXTENSION_NC);
+    result.delete();
+    m_TempFiles.add(result);
+
+    return result;
+  }
+
+  /**
+   * Returns the label index of the row: the labels occur with proportions
+   * 50/30/20. If there are fewer labels, the last one gets used instead.
+   *
+   * @param row the row index
+   * @param numLabels the number of labels available
+   * @return the label index
+   */
+  protected static int labelOf(int row, int numLabels) {
+    int result;
+
+    if (row % 10 < 5)
+      result = 0;
+    else if (row % 10 < 8)
+      result = 1;
+    else
+      result = 2;
+
+    return Math.min(result, numLabels - 1);
+  }
+
+  /**
+   * Generates the test data: an ID (the row index), a numeric value derived
+   * from the ID (missing for every 7th row), a date, a string and a nominal
+   * class attribute (see {@link #labelOf(int, int)}).
+   *
+   * @param from the first row (inclusive)
+   * @param to the last row (exclusive)
+   * @param labels the labels of the nominal attribute
+   * @return the data
+   */
+  public static Instances createData(int from, int to, String[] labels) {
+    Instances result;
+    ArrayList<Attribute> atts;
+    ArrayList<String> values;
+    double[] row;
+    int i;
+
+    values = new ArrayList<String>();
+    for (i = 0; i < labels.length; i++)
+      values.add(labels[i]);
+    atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("id"));
+    atts.add(new Attribute("value"));
+    atts.add(new Attribute("date", "yyyy-MM-dd HH:mm:ss"));
+    atts.add(new Attribute("text", (ArrayList<String>) null));
+    atts.add(new Attribute("class", values));
+    result = new Instances("netcdf-test", atts, to - from);
+    result.setClassIndex(ATT_CLASS);
+
+    for (i = from; i < to; i++) {
+      row = new double[result.numAttributes()];
+      row[0] = i;
+      row[1] = (i % 7 == 0) ? Utils.missingValue() : Math.sin(i) * i;
+      row[2] = 1420070400000L + i * 60000L;
+      row[3] = result.attribute(3).addStringValue("row-" + i);
+      row[4] = labelOf(i, labels.length);
+      result.add(new DenseInstance(1.0, row));
+    }
+
+    return result;
+  }
+
+  /**
+   * Saves the data.
+   *
+   * @param data the data to save
+   * @param file the file to save to
+   * @param options the options for the saver
+   * @throws Exception if saving fails
+   */
+  protected void save(Instances data, File file, String... options) throws Exception {
+    NetCDFSaver saver;
+
+    saver = new NetCDFSaver();
+    saver.setOptions(options.clone());
+    saver.setInstances(data);
+    saver.setFile(file);
+    saver.writeBatch();
+  }
+
+  /**
+   * Loads the file.
+   *
+   * @param file the file to load
+   * @param sampling the sampling type
+   * @param sampleSize the sample size in percent
+   * @return the loaded data
+   * @throws Exception if loading fails
+   */
+  protected Instances load(File file, int sampling, double sampleSize) throws Exception {
+    NetCDFLoader loader;
+
+    loader = new NetCDFLoader();
+    loader.setSampling(new SelectedTag(sampling, NetCDFLoader.TAGS_SAMPLING));
+    loader.setSampleSize(sampleSize);
+    loader.setSeed(42);
+    loader.setFile(file);
+
+    return loader.getDataSet();
+  }
+
+  /**
+   * Checks that the attributes got restored: names, types and labels.
+   *
+   * @param original the original data
+   * @param loaded the loaded data
+   */
+  protected void checkHeader(Instances original, Instances loaded) {
+    Attribute att;
+    int i;
+    int n;
+
+    assertEquals(original.relationName(), loaded.relationName());
+    assertEquals(original.numAttributes(), loaded.numAttributes());
+    for (i = 0; i < original.numAttributes(); i++) {
+      att = original.attribute(i);
+      assertEquals(att.name(), loaded.attribute(i).name());
+      assertEquals(att.name(), att.type(), loaded.attribute(i).type());
+      if (att.isNominal()) {
+	assertEquals(att.name(), att.numValues(), loaded.attribute(i).numValues());
+	for (n = 0; n < att.numValues(); n++)
+	  assertEquals(att.name(), att.value(n), loaded.attribute(i).value(n));
+      }
+    }
+  }
+
+  /**
+   * Checks that the loaded rows are a subset of the original data (located
+   * via the ID attribute), in ascending order, without duplicates and with
+   * all values restored.
+   *
+   * @param original the original data
+   * @param loaded the loaded data
+   */
+  protected void checkRows(Instances original, Instances loaded) {
+    int i;
+    int id;
+    int last;
+
+    last = -1;
+    for (i = 0; i < loaded.numInstances(); i++) {
+      id = (int) loaded.instance(i).value(ATT_ID);
+      assertTrue("rows not ascending/unique: " + last + " >= " + id, id > last);
+      assertEquals("row #" + i, original.instance(id).toString(), loaded.instance(i).toString());
+      last = id;
+    }
+  }
+}
@@ -0,0 +1,363 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NetCDFBulkConversionTest.java
+ * Copyright (C) 2015 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests NetCDFBulkConversion: skipping of up-to-date files, forced
+ * conversion, collisions, recursive conversion, clean up after failed
+ * conversions and the separate loader/saver options. Run from the command
+ * line with:<p/>
+ * java weka.core.converters.NetCDFBulkConversionTest
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class NetCDFBulkConversionTest
+  extends TestCase {
+
+  /** the temporary directory with the input and output directories. */
+  protected File m_TempDir;
+
+  /** the input directory. */
+  protected File m_InputDir;
+
+  /** the output directory. */
+  protected File m_OutputDir;
+
+  /**
+   * Constructs the <code>NetCDFBulkConversionTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public NetCDFBulkConversionTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_TempDir = File.createTempFile("weka-netcdf-bulk-", "");
+    m_TempDir.delete();
+    m_InputDir = new File(m_TempDir, "in");
+    m_OutputDir = new File(m_TempDir, "out");
+    assertTrue(m_InputDir.mkdirs());
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    delete(m_TempDir);
+    m_TempDir = null;
+    m_InputDir = null;
+    m_OutputDir = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Deletes the file or directory (recursively).
+   *
+   * @param file the file/directory to delete
+   */
+  protected void delete(File file) {
+    File[] files;
+    int i;
+
+    files = file.listFiles();
+    if (files != null) {
+      for (i = 0; i < files.length; i++)
+	delete(files[i]);
+    }
+    file.delete();
+  }
+
+  /**
+   * Writes test data as ARFF file to the input directory.
+   *
+   * @param name the name of the file, relative to the input directory
+   * @return the file
+   * @throws Exception if saving fails
+   */
+  protected File writeInput(String name) throws Exception {
+    ArffSaver saver;
+    File result;
+
+    result = new File(m_InputDir, name);
+    result.getParentFile().mkdirs();
+    saver = new ArffSaver();
+    saver.setInstances(AbstractNetCDFConverterTest.createData(0, 100, AbstractNetCDFConverterTest.LABELS));
+    saver.setFile(result);
+    saver.writeBatch();
+
+    return result;
+  }
+
+  /**
+   * Returns a conversion setup for the input/output directories.
+   *
+   * @param options additional options
+   * @return the conversion
+   * @throws Exception if setting the options fails
+   */
+  protected NetCDFBulkConversion newConversion(String... options) throws Exception {
+    NetCDFBulkConversion result;
+
+    result = new NetCDFBulkConversion();
+    result.setOptions(options.clone());
+    result.setInputDir(m_InputDir);
+    result.setOutputDir(m_OutputDir);
+    result.setNumThreads(2);
+
+    return result;
+  }
+
+  /**
+   * Returns the count of the line in the summary.
+   *
+   * @param summary the summary generated by the conversion
+   * @param prefix the start of the line, e.g., "Files converted"
+   * @return the count
+   */
+  protected int count(String summary, String prefix) {
+    String[] lines;
+    int i;
+
+    lines = summary.split("\n");
+    for (i = 0; i < lines.length; i++) {
+      if (lines[i].startsWith(prefix + ": "))
+	return Integer.parseInt(lines[i].substring(prefix.length() + 2));
+    }
+    fail("'" + prefix + "' not found in summary:\n" + summary);
+    return -1;
+  }
+
+  /**
+   * Loads the converted file.
+   *
+   * @param file the NetCDF file
+   * @return the data
+   * @throws Exception if loading fails
+   */
+  protected Instances load(File file) throws Exception {
+    NetCDFLoader loader;
+
+    loader = new NetCDFLoader();
+    loader.setFile(file);
+
+    return loader.getDataSet();
+  }
+
+  /**
+   * Tests that files with an up-to-date output get skipped, but outdated
+   * ones get converted again.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testSkipUpToDate() throws Exception {
+    File input;
+    File output;
+    String summary;
+
+    input = writeInput("a.arff");
+    writeInput("b.arff");
+    summary = newConversion().execute();
+    assertEquals(2, count(summary, "Files converted"));
+    output = new File(m_OutputDir, "a.nc");
+    assertTrue(output.exists());
+    assertTrue(new File(m_OutputDir, "b.nc").exists());
+
+    summary = newConversion().execute();
+    assertEquals(0, count(summary, "Files converted"));
+    assertEquals(2, count(summary, "Files skipped (up to date)"));
+
+    input.setLastModified(output.lastModified() + 10000);
+    summary = newConversion().execute();
+    assertEquals(1, count(summary, "Files converted"));
+    assertEquals(1, count(summary, "Files skipped (up to date)"));
+  }
+
+  /**
+   * Tests that up-to-date files get converted when forced.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testForce() throws Exception {
+    String summary;
+
+    writeInput("a.arff");
+    writeInput("b.arff");
+    newConversion().execute();
+
+    summary = newConversion("-force").execute();
+    assertEquals(2, count(summary, "Files converted"));
+    assertEquals(0, count(summary, "Files skipped (up to date)"));
+  }
+
+  /**
+   * Tests that input files mapping to the same output file get reported
+   * and nothing gets converted.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testCollisions() throws Exception {
+    writeInput("a.arff");
+    writeInput("a.csv.arff");
+    new File(m_InputDir, "a.csv.arff").renameTo(new File(m_InputDir, "a.csv"));
+
+    try {
+      newConversion("-include", "*.arff", "-include", "*.csv").execute();
+      fail("collision not detected");
+    }
+    catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().indexOf("a.nc") > -1);
+    }
+    assertFalse(new File(m_OutputDir, "a.nc").exists());
+  }
+
+  /**
+   * Tests that sub-directories only get converted when recursive, keeping
+   * the directory layout.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testRecursive() throws Exception {
+    String summary;
+
+    writeInput("a.arff");
+    writeInput("sub" + File.separator + "deeper" + File.separator + "a.arff");
+
+    summary = newConversion().execute();
+    assertEquals(1, count(summary, "Files found"));
+    assertFalse(new File(m_OutputDir, "sub").exists());
+
+    summary = newConversion("-recursive").execute();
+    assertEquals(2, count(summary, "Files found"));
+    assertEquals(1, count(summary, "Files converted"));
+    assertEquals(100, load(new File(m_OutputDir, "sub" + File.separator + "deeper" + File.separator + "a.nc")).numInstances());
+  }
+
+  /**
+   * Tests that a failed conversion leaves neither a temporary file nor a
+   * partial output file behind, and that other files still get converted.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testFailedConversion() throws Exception {
+    NetCDFBulkConversion conversion;
+    String summary;
+    String[] files;
+
+    writeInput("a.arff");
+    writeInput("fail.arff");
+    conversion = new NetCDFBulkConversion() {
+      private static final long serialVersionUID = -3012873485245237171L;
+      @Override
+      protected AbstractFileSaver getSaver(String ext) throws Exception {
+	return new NetCDFSaver() {
+	  private static final long serialVersionUID = 4127380914713361429L;
+	  @Override
+	  public void writeBatch() throws IOException {
+	    super.writeBatch();
+	    if (retrieveFile().getName().endsWith("fail.nc"))
+	      throw new IOException("Simulated failure after writing: " + retrieveFile());
+	  }
+	};
+      }
+    };
+    conversion.setInputDir(m_InputDir);
+    conversion.setOutputDir(m_OutputDir);
+    conversion.setNumThreads(1);
+    summary = conversion.execute();
+
+    assertEquals(1, count(summary, "Files converted"));
+    assertEquals(1, count(summary, "Files failed"));
+    files = m_OutputDir.list();
+    assertEquals(1, files.length);
+    assertEquals("a.nc", files[0]);
+  }
+
+  /**
+   * Tests that the loader and saver options get applied separately, i.e.,
+   * sampling options only take effect when supplied to the loader.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testLoaderSaverOptions() throws Exception {
+    NetCDFBulkConversion conversion;
+    NetCDFSaver saver;
+    File output;
+
+    saver = new NetCDFSaver();
+    saver.setInstances(AbstractNetCDFConverterTest.createData(0, 100, AbstractNetCDFConverterTest.LABELS));
+    saver.setFile(new File(m_InputDir, "a.nc"));
+    saver.writeBatch();
+    output = new File(m_OutputDir, "a.nc");
+
+    conversion = newConversion("-include", "*.nc", "-saver-options", "-sampling random -Z 10");
+    assertEquals("", conversion.getLoaderOptions());
+    assertEquals("-sampling random -Z 10", conversion.getSaverOptions());
+    conversion.execute();
+    assertEquals(100, load(output).numInstances());
+
+    conversion = newConversion("-include", "*.nc", "-force", "-loader-options", "-sampling random -Z 10");
+    assertEquals("-sampling random -Z 10", conversion.getLoaderOptions());
+    assertEquals("", conversion.getSaverOptions());
+    conversion.execute();
+    assertEquals(10, load(output).numInstances());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(NetCDFBulkConversionTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NetCDFLoaderTest.java
+ * Copyright (C) 2015 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests NetCDFLoader: save/load round trips and the sampling modes. Run from
+ * the command line with:<p/>
+ * java weka.core.converters.NetCDFLoaderTest
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class NetCDFLoaderTest
+  extends AbstractNetCDFConverterTest {
+
+  /**
+   * Constructs the <code>NetCDFLoaderTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public NetCDFLoaderTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Tests the round trip using a column per attribute.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testRoundTrip() throws Exception {
+    Instances data;
+    Instances loaded;
+    File file;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file);
+    loaded = load(file, NetCDFLoader.SAMPLING_NONE, 100.0);
+
+    checkHeader(data, loaded);
+    assertEquals(data.numInstances(), loaded.numInstances());
+    checkRows(data, loaded);
+  }
+
+  /**
+   * Tests the round trip using the numeric matrix.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testRoundTripNumericMatrix() throws Exception {
+    Instances data;
+    Instances loaded;
+    File file;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file, "-numeric-matrix");
+    loaded = load(file, NetCDFLoader.SAMPLING_NONE, 100.0);
+
+    checkHeader(data, loaded);
+    assertEquals(data.numInstances(), loaded.numInstances());
+    checkRows(data, loaded);
+  }
+
+  /**
+   * Tests uniform random sampling.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testRandomSampling() throws Exception {
+    Instances data;
+    Instances loaded;
+    File file;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file);
+    loaded = load(file, NetCDFLoader.SAMPLING_RANDOM, 10.0);
+
+    assertEquals(NUM_ROWS / 10, loaded.numInstances());
+    checkRows(data, loaded);
+    assertEquals("same seed, same sample", loaded.toString(), load(file, NetCDFLoader.SAMPLING_RANDOM, 10.0).toString());
+  }
+
+  /**
+   * Tests stratified sampling, which must keep the class proportions.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testStratifiedSampling() throws Exception {
+    Instances data;
+    Instances loaded;
+    File file;
+    int[] counts;
+    int i;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file);
+    loaded = load(file, NetCDFLoader.SAMPLING_STRATIFIED, 10.0);
+
+    assertEquals(NUM_ROWS / 10, loaded.numInstances());
+    checkRows(data, loaded);
+    counts = new int[loaded.attribute(ATT_CLASS).numValues()];
+    for (i = 0; i < loaded.numInstances(); i++)
+      counts[(int) loaded.instance(i).value(ATT_CLASS)]++;
+    assertEquals(50, counts[0]);
+    assertEquals(30, counts[1]);
+    assertEquals(20, counts[2]);
+  }
+
+  /**
+   * Tests systematic sampling.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testSystematicSampling() throws Exception {
+    Instances data;
+    Instances loaded;
+    File file;
+    int i;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file, "-numeric-matrix");
+    loaded = load(file, NetCDFLoader.SAMPLING_SYSTEMATIC, 1.0);
+
+    assertEquals(NUM_ROWS / 100, loaded.numInstances());
+    checkRows(data, loaded);
+    for (i = 1; i < loaded.numInstances(); i++)
+      assertEquals(100.0, loaded.instance(i).value(ATT_ID) - loaded.instance(i - 1).value(ATT_ID), 0.0);
+  }
+
+  /**
+   * Tests that stratified sampling selects the same rows when the stratum
+   * sizes have to be determined from the data, rather than the statistics.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testStratifiedSamplingWithoutStatistics() throws Exception {
+    NetCDFLoader loader;
+    Instances data;
+    File file;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file);
+
+    loader = new NetCDFLoader() {
+      private static final long serialVersionUID = -8311853870377420513L;
+      @Override
+      protected int[] getStratumSizes(ucar.nc2.Variable var, weka.core.Attribute att) {
+	assertNotNull(super.getStratumSizes(var, att));
+	return null;
+      }
+    };
+    loader.setSampling(new SelectedTag(NetCDFLoader.SAMPLING_STRATIFIED, NetCDFLoader.TAGS_SAMPLING));
+    loader.setSampleSize(10.0);
+    loader.setSeed(42);
+    loader.setFile(file);
+
+    assertEquals(load(file, NetCDFLoader.SAMPLING_STRATIFIED, 10.0).toString(), loader.getDataSet().toString());
+  }
+
+  /**
+   * Tests the grouping of the selected rows into reads: narrow variables
+   * get read in whole chunks even at low sampling rates, wide ones with
+   * separate or strided reads.
+   */
+  public void testCoalesce() {
+    NetCDFLoader loader;
+    List<int[]> blocks;
+    int[] rows;
+    int i;
+
+    loader = new NetCDFLoader();
+
+    // 1% of 100000 rows, i.e., gaps of about 100 rows
+    rows = new int[1000];
+    for (i = 0; i < rows.length; i++)
+      rows[i] = i * 100 + (i % 7);
+    blocks = loader.coalesce(rows, NetCDFLoader.MAX_GAP_BYTES / 8);
+    assertEquals(2, blocks.size());
+    assertEquals(0, blocks.get(0)[0]);
+    assertEquals(rows.length, blocks.get(blocks.size() - 1)[1]);
+    for (int[] block: blocks)
+      assertEquals(1, block[2]);
+    for (int[] block: loader.coalesce(rows, 32))
+      assertTrue((block[2] > 1) || (block[1] - block[0] == 1));
+
+    // constant stride beyond the gap
+    for (i = 0; i < rows.length; i++)
+      rows[i] = i * 100;
+    blocks = loader.coalesce(rows, 32);
+    assertEquals(1, blocks.size());
+    assertEquals(100, blocks.get(0)[2]);
+  }
+
+  /**
+   * Reads the file incrementally and compares the instances with the ones
+   * read in batch mode.
+   *
+   * @param file the file to read
+   * @param sampling the sampling type
+   * @param sampleSize the sample size in percent
+   * @throws Exception if an error occurs
+   */
+  protected void checkIncremental(File file, int sampling, double sampleSize) throws Exception {
+    NetCDFLoader loader;
+    Instances batch;
+    Instances structure;
+    Instance inst;
+    int count;
+
+    batch = load(file, sampling, sampleSize);
+    loader = new NetCDFLoader();
+    loader.setSampling(new SelectedTag(sampling, NetCDFLoader.TAGS_SAMPLING));
+    loader.setSampleSize(sampleSize);
+    loader.setSeed(42);
+    loader.setFile(file);
+    structure = loader.getStructure();
+    count = 0;
+    while ((inst = loader.getNextInstance(structure)) != null) {
+      assertEquals("row #" + count, batch.instance(count).toString(), inst.toString());
+      count++;
+    }
+    assertEquals(batch.numInstances(), count);
+    assertNull(loader.getNextInstance(structure));
+  }
+
+  /**
+   * Tests reading incrementally, spanning several blocks.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testIncremental() throws Exception {
+    File file;
+
+    file = newTempFile();
+    save(createData(0, NetCDFLoader.BLOCK_SIZE * 2 + 100, LABELS), file);
+    checkIncremental(file, NetCDFLoader.SAMPLING_NONE, 100.0);
+    checkIncremental(file, NetCDFLoader.SAMPLING_RANDOM, 60.0);
+  }
+
+  /**
+   * Tests reading the numeric matrix incrementally, spanning several blocks.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testIncrementalNumericMatrix() throws Exception {
+    File file;
+
+    file = newTempFile();
+    save(createData(0, NetCDFLoader.BLOCK_SIZE * 2 + 100, LABELS), file, "-numeric-matrix");
+    checkIncremental(file, NetCDFLoader.SAMPLING_NONE, 100.0);
+    checkIncremental(file, NetCDFLoader.SAMPLING_STRATIFIED, 60.0);
+  }
+
+  /**
+   * Tests that out-of-range sample sizes get rejected.
+   */
+  public void testSampleSizeOutOfRange() {
+    NetCDFLoader loader;
+
+    loader = new NetCDFLoader();
+    try {
+      loader.setSampleSize(101.0);
+      fail("sample size > 100 accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      loader.setSampleSize(-1.0);
+      fail("sample size < 0 accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(NetCDFLoaderTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
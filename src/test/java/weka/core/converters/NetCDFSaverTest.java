@@ -0,0 +1,485 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NetCDFSaverTest.java
+ * Copyright (C) 2015 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import weka.core.AttributeStats;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests NetCDFSaver: appending to an existing file must result in the same
+ * data and statistics as saving all the data in one go. Run from the
+ * command line with:<p/>
+ * java weka.core.converters.NetCDFSaverTest
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class NetCDFSaverTest
+  extends AbstractNetCDFConverterTest {
+
+  /** the labels of the first part of appended data. */
+  public final static String[] LABELS_FIRST = new String[]{"a", "b"};
+
+  /**
+   * Constructs the <code>NetCDFSaverTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public NetCDFSaverTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Combines the two datasets, using the header of the second one. Nominal
+   * and string values are transferred by label.
+   *
+   * @param first the first dataset
+   * @param second the second dataset, determines the header
+   * @return the combined data
+   */
+  protected Instances combine(Instances first, Instances second) {
+    Instances result;
+    Instance inst;
+    double[] values;
+    int i;
+    int n;
+
+    result = second.stringFreeStructure();
+    for (Instances part: new Instances[]{first, second}) {
+      for (n = 0; n < part.numInstances(); n++) {
+	inst = part.instance(n);
+	values = new double[result.numAttributes()];
+	for (i = 0; i < result.numAttributes(); i++) {
+	  if (inst.isMissing(i))
+	    values[i] = Utils.missingValue();
+	  else if (result.attribute(i).isNominal())
+	    values[i] = result.attribute(i).indexOfValue(inst.stringValue(i));
+	  else if (result.attribute(i).isString())
+	    values[i] = result.attribute(i).addStringValue(inst.stringValue(i));
+	  else
+	    values[i] = inst.value(i);
+	}
+	result.add(new DenseInstance(1.0, values));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Saves two parts by appending, the second part introducing a new label,
+   * and compares the result with saving everything in one go.
+   *
+   * @param numericMatrix whether to store the numeric attributes as matrix
+   * @throws Exception if an error occurs
+   */
+  protected void checkAppend(boolean numericMatrix) throws Exception {
+    Instances first;
+    Instances second;
+    Instances all;
+    Instances loaded;
+    NetCDFLoader loader;
+    NetCDFStatistics[] expected;
+    NetCDFStatistics[] actual;
+    File appendFile;
+    File singleFile;
+    String[] options;
+    String name;
+    int i;
+    int n;
+
+    options = numericMatrix ? new String[]{"-append", "-numeric-matrix"} : new String[]{"-append"};
+    first = createData(0, NUM_ROWS / 2, LABELS_FIRST);
+    second = createData(NUM_ROWS / 2, NUM_ROWS, LABELS);
+    all = combine(first, second);
+    appendFile = newTempFile();
+    save(first, appendFile, options);
+    save(second, appendFile, options);
+    singleFile = newTempFile();
+    save(all, singleFile, numericMatrix ? new String[]{"-numeric-matrix"} : new String[0]);
+
+    // data
+    loader = new NetCDFLoader();
+    loader.setFile(appendFile);
+    loaded = loader.getDataSet();
+    assertEquals(all.numInstances(), loaded.numInstances());
+    assertEquals("labels extended", LABELS.length, loaded.attribute(ATT_CLASS).numValues());
+    assertEquals(LABELS[2], loaded.attribute(ATT_CLASS).value(2));
+    checkRows(all, loaded);
+
+    // statistics
+    actual = loader.getStatistics();
+    loader = new NetCDFLoader();
+    loader.setFile(singleFile);
+    expected = loader.getStatistics();
+    assertEquals(expected.length, actual.length);
+    for (i = 0; i < expected.length; i++) {
+      name = all.attribute(i).name();
+      assertEquals(name, expected[i].getCount(), actual[i].getCount());
+      assertEquals(name, expected[i].getMissing(), actual[i].getMissing());
+      assertEquals(name, expected[i].getMin(), actual[i].getMin(), 0.0);
+      assertEquals(name, expected[i].getMax(), actual[i].getMax(), 0.0);
+      assertEquals(name, expected[i].getMean(), actual[i].getMean(), 1e-9 * Math.max(1.0, Math.abs(expected[i].getMean())));
+      assertEquals(name, expected[i].getVariance(), actual[i].getVariance(), 1e-9 * Math.max(1.0, Math.abs(expected[i].getVariance())));
+      if (expected[i].getLabelCounts() == null) {
+	assertNull(name, actual[i].getLabelCounts());
+      }
+      else {
+	assertEquals(name, expected[i].getLabelCounts().length, actual[i].getLabelCounts().length);
+	for (n = 0; n < expected[i].getLabelCounts().length; n++)
+	  assertEquals(name, expected[i].getLabelCounts()[n], actual[i].getLabelCounts()[n]);
+      }
+    }
+  }
+
+  /**
+   * Computes mean and (sample) variance of the attribute in two passes,
+   * independent of the single-pass computation in the saver.
+   *
+   * @param data the data to use
+   * @param index the index of the attribute
+   * @return mean and variance
+   */
+  protected double[] meanVariance(Instances data, int index) {
+    double sum;
+    double sumSq;
+    int count;
+    int n;
+
+    sum   = 0;
+    count = 0;
+    for (n = 0; n < data.numInstances(); n++) {
+      if (!data.instance(n).isMissing(index)) {
+	sum += data.instance(n).value(index);
+	count++;
+      }
+    }
+    sumSq = 0;
+    for (n = 0; n < data.numInstances(); n++) {
+      if (!data.instance(n).isMissing(index))
+	sumSq += Math.pow(data.instance(n).value(index) - sum / count, 2);
+    }
+
+    return new double[]{sum / count, sumSq / (count - 1)};
+  }
+
+  /**
+   * Compares the stored statistics with the ones computed from the data:
+   * counts and range from Weka's attribute statistics, mean and variance
+   * with a two-pass computation (Weka's sum of squares loses precision for
+   * large values such as dates).
+   *
+   * @param options the options for the saver
+   * @throws Exception if an error occurs
+   */
+  protected void checkStatistics(String... options) throws Exception {
+    Instances data;
+    NetCDFLoader loader;
+    NetCDFStatistics[] stats;
+    AttributeStats expected;
+    double[] meanVar;
+    File file;
+    String name;
+    int i;
+    int n;
+
+    data = createData(0, NUM_ROWS, LABELS);
+    file = newTempFile();
+    save(data, file, options);
+    loader = new NetCDFLoader();
+    loader.setFile(file);
+    stats = loader.getStatistics();
+
+    assertEquals(data.numAttributes(), stats.length);
+    for (i = 0; i < data.numAttributes(); i++) {
+      name = data.attribute(i).name();
+      expected = data.attributeStats(i);
+      assertEquals(name, (long) expected.missingCount, stats[i].getMissing());
+      assertEquals(name, (long) (expected.totalCount - expected.missingCount), stats[i].getCount());
+      if (data.attribute(i).isNumeric()) {
+	assertEquals(name, expected.numericStats.min, stats[i].getMin(), 0.0);
+	assertEquals(name, expected.numericStats.max, stats[i].getMax(), 0.0);
+	meanVar = meanVariance(data, i);
+	assertEquals(name, meanVar[0], stats[i].getMean(), 1e-9 * Math.abs(meanVar[0]));
+	assertEquals(name, meanVar[1], stats[i].getVariance(), 1e-9 * meanVar[1]);
+	assertNull(name, stats[i].getLabelCounts());
+      }
+      else if (data.attribute(i).isNominal()) {
+	assertEquals(name, expected.nominalCounts.length, stats[i].getLabelCounts().length);
+	for (n = 0; n < expected.nominalCounts.length; n++)
+	  assertEquals(name, (long) expected.nominalCounts[n], stats[i].getLabelCounts()[n]);
+	assertTrue(name, Double.isNaN(stats[i].getMean()));
+      }
+      else {
+	assertNull(name, stats[i].getLabelCounts());
+	assertTrue(name, Double.isNaN(stats[i].getMean()));
+      }
+    }
+  }
+
+  /**
+   * Tests the statistics with a variable per attribute.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testStatistics() throws Exception {
+    checkStatistics();
+  }
+
+  /**
+   * Tests the statistics with the numeric matrix.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testStatisticsNumericMatrix() throws Exception {
+    checkStatistics("-numeric-matrix");
+  }
+
+  /**
+   * Tests that the range is only stored as CF actual_range for DOUBLE
+   * variables holding the data, and as weka_range otherwise.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testRangeAttributes() throws Exception {
+    NetcdfFile nc;
+    File file;
+    Variable var;
+
+    file = newTempFile();
+    save(createData(0, NUM_ROWS, LABELS), file, "-numeric-matrix");
+    nc = NetcdfFile.open(file.getAbsolutePath());
+    try {
+      // matrix placeholder
+      var = nc.findVariable(NetCDFSaver.VARIABLE_PREFIX + "value");
+      assertNull(var.findAttribute(NetCDFStatistics.ATT_ACTUAL_RANGE));
+      assertNotNull(var.findAttribute(NetCDFStatistics.ATT_RANGE));
+      // CHAR date
+      var = nc.findVariable(NetCDFSaver.VARIABLE_PREFIX + "date");
+      assertNull(var.findAttribute(NetCDFStatistics.ATT_ACTUAL_RANGE));
+      assertNotNull(var.findAttribute(NetCDFStatistics.ATT_RANGE));
+    }
+    finally {
+      nc.close();
+    }
+
+    file = newTempFile();
+    save(createData(0, NUM_ROWS, LABELS), file);
+    nc = NetcdfFile.open(file.getAbsolutePath());
+    try {
+      var = nc.findVariable(NetCDFSaver.VARIABLE_PREFIX + "value");
+      assertNotNull(var.findAttribute(NetCDFStatistics.ATT_ACTUAL_RANGE));
+      assertNull(var.findAttribute(NetCDFStatistics.ATT_RANGE));
+    }
+    finally {
+      nc.close();
+    }
+  }
+
+  /**
+   * Tests appending with a variable per attribute.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testAppend() throws Exception {
+    checkAppend(false);
+  }
+
+  /**
+   * Tests appending with the numeric matrix.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testAppendNumericMatrix() throws Exception {
+    checkAppend(true);
+  }
+
+  /**
+   * Reads the content of the file.
+   *
+   * @param file the file to read
+   * @return the content
+   * @throws Exception if reading fails
+   */
+  protected byte[] readBytes(File file) throws Exception {
+    ByteArrayOutputStream result;
+    FileInputStream in;
+    byte[] buffer;
+    int read;
+
+    result = new ByteArrayOutputStream();
+    buffer = new byte[8192];
+    in = new FileInputStream(file);
+    try {
+      while ((read = in.read(buffer)) != -1)
+	result.write(buffer, 0, read);
+    }
+    finally {
+      in.close();
+    }
+
+    return result.toByteArray();
+  }
+
+  /**
+   * Appends the data, which must fail and leave the file unchanged.
+   *
+   * @param file the file to append to
+   * @param data the data to append
+   * @param msg the message in case appending succeeds
+   * @throws Exception if an error occurs
+   */
+  protected void checkAppendFails(File file, Instances data, String msg) throws Exception {
+    byte[] before;
+
+    before = readBytes(file);
+    try {
+      save(data, file, "-append");
+      fail(msg);
+    }
+    catch (IOException e) {
+      // expected
+    }
+    assertTrue("file changed: " + msg, Arrays.equals(before, readBytes(file)));
+  }
+
+  /**
+   * Tests that appending to a file without unlimited record dimension fails.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testAppendToFixedSize() throws Exception {
+    File file;
+
+    file = newTempFile();
+    save(createData(0, NUM_ROWS / 2, LABELS), file);
+    checkAppendFails(file, createData(NUM_ROWS / 2, NUM_ROWS, LABELS), "appended to file without unlimited record dimension");
+  }
+
+  /**
+   * Tests that appending data with a different header fails.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testAppendMismatch() throws Exception {
+    Instances data;
+    File file;
+
+    file = newTempFile();
+    save(createData(0, NUM_ROWS / 2, LABELS), file, "-append");
+
+    data = createData(NUM_ROWS / 2, NUM_ROWS, LABELS);
+    data.renameAttribute(1, "other");
+    checkAppendFails(file, data, "appended data with different attribute name");
+
+    data = createData(NUM_ROWS / 2, NUM_ROWS, LABELS);
+    data.deleteAttributeAt(1);
+    checkAppendFails(file, data, "appended data with fewer attributes");
+  }
+
+  /**
+   * Tests that appending strings or labels that exceed the maximum length
+   * fails, rather than truncating them.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testAppendTooLong() throws Exception {
+    Instances data;
+    File file;
+    StringBuilder value;
+    int i;
+
+    file = newTempFile();
+    save(createData(0, NUM_ROWS / 2, LABELS), file, "-append", "-max-len-string", "10");
+
+    value = new StringBuilder();
+    for (i = 0; i < 11; i++)
+      value.append("x");
+    data = createData(NUM_ROWS / 2, NUM_ROWS, LABELS);
+    data.instance(10).setValue(3, value.toString());
+    checkAppendFails(file, data, "appended string exceeding maximum length");
+
+    data = createData(NUM_ROWS / 2, NUM_ROWS, new String[]{"a", "b", "c", "long label"});
+    checkAppendFails(file, data, "appended label exceeding maximum length");
+  }
+
+  /**
+   * Tests that setting the destination leaves no output stream open, as the
+   * data gets written via the netCDF API.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testDestinationNotOpen() throws Exception {
+    NetCDFSaver saver;
+
+    saver = new NetCDFSaver();
+    saver.setInstances(createData(0, NUM_ROWS, LABELS));
+    saver.setFile(newTempFile());
+    assertNull(saver.getWriter());
+    saver.writeBatch();
+    assertNull(saver.getWriter());
+  }
+
+  /**
+   * Tests that a negative header space gets rejected.
+   */
+  public void testHeaderSpaceNegative() {
+    try {
+      new NetCDFSaver().setHeaderSpace(-1);
+      fail("negative header space accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(NetCDFSaverTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}